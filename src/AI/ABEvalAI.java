@@ -6,8 +6,7 @@
 
 package AI;
 
-import Main.MainPanel;
-import java.awt.Point;
+import Main.GameRules;
 import java.util.*;
 
 /**
@@ -16,12 +15,73 @@ import java.util.*;
  */
 public class ABEvalAI extends AlphaBetaAI {
 
-    protected static final boolean DIAG = true;
-    protected static final boolean T_DIAG = true;
+    protected static final boolean DIAG = Boolean.getBoolean("five.diag");     // -Dfive.diag=true
     protected static final boolean PV_DIAG = false;
 
-    protected static final int N_DEPTH = 4;
-    private VectorEval eval = new VectorEval();
+    // Search limits
+    protected static final int MAX_DEPTH = 32;
+    protected static final long MOVE_TIME = 3000;                               // ms per move
+    protected static final int CHECK_NODES = 0xFF;                              // Abort check interval
+    protected static final long HISTORY_MAX = (1L << 40) - 1;                   // Fits the ordering key
+
+    // Aspiration windows: half width relative to 1 + |score|, growth on a
+    // fail, and fails before the window is opened all the way
+    protected static final double ASPIRATION = 0.05;
+    protected static final double ASPIRATION_WIDEN = 4;
+    protected static final int ASPIRATION_TRIES = 3;
+
+    protected static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    // Memory besides the transposition table and the threat solvers' tables:
+    // the JVM's own, and the game tree (with its spare for compacting), move
+    // ordering tables, evaluation and leaf solver of each thread
+    protected static final int JVM_MB = 48;
+    protected static final int THREAD_MB = 10;
+
+    // Threat-space search: before the main search, and optionally at leaves
+    protected static final int SOLVER_BITS = 16;                                // Table size, log 2
+    protected static final int VCF_PLY = 40;
+    protected static final long VCF_NODES = 50000;
+    protected static final int VCT_PLY = 16;
+    protected static final long VCT_NODES = 20000;
+    protected static final int LEAF_PLY = 12;                                   // VCF only
+    protected static final long LEAF_NODES = 64;
+    protected static final int PROOF_BITS = 18;                                 // Proof-number search
+    protected static final long PROOF_NODES = 50000;
+    protected static final double SOLVER_SHARE = 0.5;                           // Of the move's time, at most
+
+    // Plies of the game tree kept in the pool, which bounds its size: below
+    // them every node is searched through a single scratch node
+    protected static final int TREE_PLY = 2;
+
+    // Solved positions are looked up in the search from this remaining depth
+    protected static final int SOLVED_DEPTH = 2;
+
+    private final EvalState eval;
+    private long moveTime = MOVE_TIME;
+    private long nodeLimit = Long.MAX_VALUE;
+    private int threads = THREADS;
+    private boolean ponder = true;
+    private boolean leafSolve = false;
+    private final ThreatSolver solver = new ThreatSolver(SOLVER_BITS);          // Kept in step with the game
+    private final ProofSolver prover = new ProofSolver(PROOF_BITS);             // Likewise
+    private final Symmetry symmetry = new Symmetry();                          // Likewise
+    private final EvalState.MoveList replies = new EvalState.MoveList();        // Only root moves, if any
+    private OpeningBook book;
+    private SolvedCache solved;
+
+    // Current search. Helpers are kept from search to search, their own
+    // copies of the position kept in step with the game like the main one
+    private final Worker main;
+    private Worker[] helpers = new Worker[0];
+    private volatile boolean stop;                                              // Tells helpers to stop
+    private long searched;                                                      // Nodes, all threads
+
+    // Pondering - search on the expected reply during the opponent's turn
+    private boolean pondering = false;
+    private int ponderMove = TranspositionTable.NO_MOVE;                        // Expected reply
+    private int ponderBest = TranspositionTable.NO_MOVE;                        // Best answer found
+    private int ponderDepth;
 
     static {
         long seed = new Random().nextLong();
@@ -30,114 +90,765 @@ public class ABEvalAI extends AlphaBetaAI {
         if (DIAG) System.out.println("Evaluation seed: " + VectorEval.SEED);
     }
 
-    public ABEvalAI(MainPanel parent) {
-        super(parent);
+    public ABEvalAI() {
+        this(TT_MB);
     }
 
-    /* Update internal state through game state */
+    public ABEvalAI(int ttMegabytes) {
+        this(ttMegabytes, new VectorEval());
+    }
+
+    /* Create with the given evaluation, for comparing evaluators */
+    ABEvalAI(int ttMegabytes, EvalState eval) {
+        super(ttMegabytes);
+        this.eval = eval;
+        main = new Worker(eval, symmetry, pool);
+    }
+
+    /* Size (MB) of the largest transposition table that keeps the process
+     * within the given memory (bytes), and the AI within the heap
+     */
+    public static int tableMegabytes(long memory, int threads) {
+        long solvers = ThreatSolver.bytes(SOLVER_BITS) + ProofSolver.bytes(PROOF_BITS) >> 20;
+        long mb = Math.min((memory >> 20) - JVM_MB, Runtime.getRuntime().maxMemory() >> 20)
+                  - solvers - THREAD_MB * threads;
+        return (int) Math.max(1, Math.min(mb, TT_MB * 64));
+    }
+
+    /* Set the time (ms) and number of nodes the AI may spend on a move */
+    public void setBudget(long moveTime, long nodeLimit) {
+        this.moveTime = moveTime;
+        this.nodeLimit = nodeLimit;
+    }
+
+    /* Set the number of threads to search with (1 disables helper threads) */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /* Play from the given opening book while it knows the position (null
+     * for none)
+     */
+    public void setBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    /* Keep proven results in the given cache, and look positions up in it
+     * (null for none)
+     */
+    public void setSolved(SolvedCache solved) {
+        this.solved = solved;
+    }
+
+    /* Enable or disable pondering */
+    public void setPonder(boolean ponder) {
+        this.ponder = ponder;
+    }
+
+    /* Enable or disable the search for forced wins by fours at leaves */
+    public void setLeafSolve(boolean leafSolve) {
+        if (leafSolve != this.leafSolve)
+            helpers = new Worker[0];                                            // With solvers or without
+        this.leafSolve = leafSolve;
+    }
+
+    /* Update internal state through opponent's move */
     @Override
     public void update() {
         super.update();
-        long st = System.currentTimeMillis();
-        eval.move(lastX, lastY, MainPanel.BLACK);
-        evalTime += System.currentTimeMillis() - st;
+        eval.move(lastX, lastY, -player);
+        solver.move(lastX, lastY, -player);
+        prover.move(lastX, lastY, -player);
+        symmetry.move(lastX * 19 + lastY, -player);
+        for (Worker helper : helpers)
+            helper.move(lastX * 19 + lastY, -player);
         if (DIAG) {
             System.out.println();
-            System.out.println("Black: " + lastX + "," + lastY + " (" + eval.evaluate() + ")");
+            System.out.println(name(-player) + lastX + "," + lastY + " (" + eval.evaluate() + ")");
         }
     }
 
-    /* Time diagnostic */
-    public static void printDiagnostic() {
-        System.out.println("Eval / kn: " + 1000.0 * AlphaBetaAI.evalTime / AlphaBetaAI.nodes + " ms");
-        if (T_DIAG) AlphaBetaAI.printDiagnostic();
+    /* Update internal state through own move */
+    @Override
+    public void update(int x, int y) {
+        super.update(x, y);
+        eval.move(x, y, player);
+        solver.move(x, y, player);
+        prover.move(x, y, player);
+        symmetry.move(x * 19 + y, player);
+        for (Worker helper : helpers)
+            helper.move(x * 19 + y, player);
+        if (DIAG) {
+            System.out.println(name(player) + x + "," + y + " (" + eval.evaluate() + ")");
+            System.out.println();
+        }
     }
 
-    /* Minimax search with alpha-beta pruning and negamax simplification */
-    private void alphabeta(EvalState eval, Node node, int player, int depth) {
-
-        long st = System.currentTimeMillis();                                   // Diagnostic
-        double heuristic = player * eval.evaluate();
-        evalTime += System.currentTimeMillis() - st;                            // Diagnostic
+    /* Update internal state by taking back the last stone - the
+     * transposition table is kept, its entries being as good as before
+     */
+    @Override
+    public void undo(int x, int y) {
+        int side = board.get(x, y);
+        super.undo(x, y);
+        eval.undo();
+        solver.undo();
+        prover.undo();
+        symmetry.undo(x * 19 + y, side);
+        for (Worker helper : helpers)
+            helper.undo(x * 19 + y, side);
+        ponderMove = TranspositionTable.NO_MOVE;
+        ponderBest = TranspositionTable.NO_MOVE;
+    }
 
-        // Leaf is reached
-        if (depth == 0 || Double.isInfinite(heuristic)) {
-            node.alpha = node.beta = heuristic;
+    /* Signal end of game, and have what was solved in it written out */
+    @Override
+    public void end() {
+        super.end();
+        if (solved != null)
+            solved.force();
+    }
 
-        // Full depth not reached - keep expanding
-        } else {
+    private static String name(int player) {
+        return player == GameRules.BLACK ? "Black: " : "White: ";
+    }
 
-            boolean cutoff = false;
+    /* Iterative deepening: search one ply deeper at a time until the budget
+     * runs out, keeping the best move of the last completed iteration. Helper
+     * threads search the same position alongside the main one, each on its
+     * own copy of the evaluation, and share their results with it only
+     * through the transposition table (lazy SMP). The budget is in ms
+     */
+    private int search(int startDepth, int maxDepth, int best, long budget) {
+
+        long st = System.currentTimeMillis(), start = System.nanoTime();
+        main.root = root;
+        main.deadline = best == TranspositionTable.NO_MOVE ? 0 : st + budget;
+        main.searched = 0;
+        main.stats.clear();
+        main.aborted = false;
+        main.solver = leafSolve ? solver : null;
+        main.clearOrdering();
+
+        // Start helpers one ply ahead of the main thread, and half of them
+        // two, so that they fill the table for its next iterations
+        stop = false;
+        if (helpers.length != threads - 1) {
+            helpers = new Worker[threads - 1];
+            for (int i = 0; i < helpers.length; i++) {
+                helpers[i] = new Worker(eval.copy(), symmetry.copy(), new NodePool());
+                helpers[i].solver = leafSolve ? solver.copy() : null;
+            }
+        }
+        Thread[] helperThreads = new Thread[helpers.length];
+        for (int i = 0; i < helpers.length; i++) {
+            Worker helper = helpers[i];
+            helper.pool.reset();
+            helper.root = helper.pool.root(pool.x(root), pool.y(root), pool.box[root]);
+            helper.deadline = st + budget;
+            helper.start = startDepth + 1 + i % 2;
+            helper.searched = 0;
+            helper.stats.clear();
+            helper.aborted = false;
+            helper.clearOrdering();
+            helperThreads[i] = new Thread(helper);
+            helperThreads[i].start();
+        }
 
-            st = System.currentTimeMillis();                                    // Diagnostic
-            LinkedList<EvalState.Move> ml = eval.listMoves();
-            evalTime += System.currentTimeMillis() - st;                        // Diagnostic
+        int completed = startDepth - 1;
+        double score = Double.NaN, previous = Double.NaN;                       // Unknown - full window
+        for (int depth = startDepth; depth <= maxDepth; depth++) {
+
+            // Aspiration: search a window around the score of the last
+            // iteration with the same side to move last, widening it on the
+            // side it fails, until the score falls inside
+            double centre = previous, delta = ASPIRATION * (1 + Math.abs(centre)), lo, hi;
+            boolean narrow = !Double.isNaN(centre) && !Double.isInfinite(centre);
+            lo = narrow ? centre - delta : Double.NEGATIVE_INFINITY;
+            hi = narrow ? centre + delta : Double.POSITIVE_INFINITY;
+            for (int tries = 1; ; tries++) {
+                double s = main.deepen(depth, lo, hi);
+                if (main.aborted || (s > lo || lo == Double.NEGATIVE_INFINITY)
+                                    && (s < hi || hi == Double.POSITIVE_INFINITY))
+                    break;
+                delta *= ASPIRATION_WIDEN;
+                if (s <= lo)
+                    lo = tries < ASPIRATION_TRIES ? s - delta : Double.NEGATIVE_INFINITY;
+                if (s >= hi)
+                    hi = tries < ASPIRATION_TRIES ? s + delta : Double.POSITIVE_INFINITY;
+            }
+            if (main.aborted)
+                break;
+
+            previous = score;
+            score = main.score;
+            if (main.best != TranspositionTable.NO_MOVE)
+                best = main.best;
+            completed = depth;
+            main.deadline = st + budget;
+
+            // Stop on a proven result, or if the next iteration can't finish
+            long elapsed = System.currentTimeMillis() - st;
+            if (Double.isInfinite(score) || elapsed >= budget / 2 || end
+                || (!pondering && main.searched >= nodeLimit))
+                break;
 
-            // Loop through all given moves
-            Iterator<EvalState.Move> it = ml.iterator();
-            EvalState.Move m;
-            while(it.hasNext()) {
-                
-                m = it.next();
+        }
 
-                st = System.currentTimeMillis();                                // Diagnostic
+        // Stop helpers
+        stop = true;
+        searched = main.searched;
+        stats.addMain(main.stats, completed);
+        for (int i = 0; i < helpers.length; i++) {
+            try {
+                helperThreads[i].join();
+            } catch (InterruptedException e) {}
+            searched += helpers[i].searched;
+            stats.add(helpers[i].stats);
+        }
+        stats.time += System.nanoTime() - start;
 
-                // Get the next node or create a new one
-                Node nn = node.next.get(m.p);
-                if (nn == null) {
-                    nn = new Node(node, m.p.x, m.p.y);
-                    node.next.put(m.p, nn);
-                }
-                nn.alpha = -node.beta;
-                nn.beta = -node.alpha;
-                nodes++;                                                        // Diagnostic
+        if (DIAG) System.out.println((pondering ? "Ponder depth: " : "Depth: ") + completed
+                                     + " (" + searched + " nodes, " + threads + " threads)");
 
-                nodeTime += System.currentTimeMillis() - st;                    // Diagnostic
+        if (pondering)
+            ponderDepth = completed;
+        return best;
 
-                // Modify board position and recurse
-                st = System.currentTimeMillis();                                // Diagnostic
-                eval.move(m.p.x, m.p.y, player);
-                evalTime += System.currentTimeMillis() - st;                    // Diagnostic
+    }
 
-                alphabeta(eval, nn, -player, depth - 1);
+    /* Fixed-depth search of the current position, for benchmarks - returns
+     * the number of nodes searched
+     */
+    long searchDepth(int depth) {
+        tt.newSearch();
+        search(1, depth, TranspositionTable.NO_MOVE, Long.MAX_VALUE / 2);
+        return searched;
+    }
 
-                st = System.currentTimeMillis();                                // Diagnostic
-                eval.undo();
-                evalTime += System.currentTimeMillis() - st;                    // Diagnostic
+    /* Put a stone on the board without going through the game, for benchmarks */
+    void play(int x, int y, int player) {
+        place(x, y, player);
+        stretch(x, y);
+        eval.move(x, y, player);
+        solver.move(x, y, player);
+        prover.move(x, y, player);
+        symmetry.move(x * 19 + y, player);
+        for (Worker helper : helpers)
+            helper.move(x * 19 + y, player);
+        pool.reset();
+        root = pool.root(x, y, box());
+    }
 
-                // Update and check for cutoff
-                node.alpha = Math.max(node.alpha, -nn.alpha);
-                if (node.alpha >= node.beta) {
-                    cutoff = true;
-                    node.alpha = Double.POSITIVE_INFINITY;
-                }
+    /* Produce next move */
+    @Override
+    public int getMove() {
+
+        long st = System.currentTimeMillis(), start = System.nanoTime();
+        stats.clear();
+
+        // A book move needs no search at all, nor does a position solved in
+        // an earlier game
+        int best = book == null ? OpeningBook.NONE : book.probe(board, RNG);
+        int known = best == OpeningBook.NONE ? known() : TranspositionTable.NO_MOVE;
+        if (best != OpeningBook.NONE) {
+            if (DIAG) System.out.println("Book move");
+        } else if (known != TranspositionTable.NO_MOVE) {
+            best = known;
+        } else {
 
+            // A forced win by threats needs no search: the shortest one by
+            // fours, or else by threes, within a few plies, or else any the
+            // proof-number search finds. That search also tells a lost position,
+            // where the longest defence is played, and otherwise which replies
+            // to the opponent's threats are not lost, for the search to choose from.
+            // The searches stop at their share of the time, leaving the rest
+            tt.newSearch();
+            replies.clear();
+            long deadline = st + Math.max(1, (long) (moveTime * SOLVER_SHARE));
+            int[] line = solver.solve(player, false, VCF_PLY, VCF_NODES, deadline);
+            long nodes = solver.nodes();
+            if (line == null) {
+                line = solver.solve(player, true, VCT_PLY, VCT_NODES, deadline);
+                nodes += solver.nodes();
             }
+            int result = ProofSolver.WON;
+            if (line == null) {
+                result = prover.solve(player, PROOF_NODES, deadline);
+                if (result == ProofSolver.UNKNOWN)
+                    prover.replies(replies);
+                else if (prover.line().length > 0)
+                    line = prover.line();
+                nodes += prover.nodes();
+            }
+            stats.solverNodes += nodes;
+            if (line != null) {
+                best = line[0];
+                remember(result == ProofSolver.WON ? SolvedCache.WON : SolvedCache.LOST, line);
+                if (DIAG) System.out.println("Threat " + (result == ProofSolver.WON ? "win: " : "loss: ")
+                                             + line.length + " plies (" + nodes + " nodes)");
+
+            // Carry on from the pondering search if the opponent played as
+            // expected, and if any move may be played
+            } else if (ponderMove == TranspositionTable.move(lastX, lastY) && ponderBest != TranspositionTable.NO_MOVE
+                       && replies.size() == 0)
+                best = search(ponderDepth + 1, MAX_DEPTH, ponderBest, left(st));
+            else
+                best = search(1, MAX_DEPTH, TranspositionTable.NO_MOVE, left(st));
 
         }
+        ponderMove = TranspositionTable.NO_MOVE;
+        ponderBest = TranspositionTable.NO_MOVE;
+        replies.clear();
+
+        int next = pool.child(root, best / 19, best % 19);
+        root = next == NodePool.NONE ? NodePool.NONE : pool.compact(next);
+        if (PV_DIAG) printPrincip(pool, root, player);
+
+        SearchMonitor monitor = SearchMonitor.get();
+        if (stats.nodes() > 0 || stats.solverNodes > 0)
+            monitor.add(stats);
+        monitor.addMove(System.nanoTime() - start);
+        if (DIAG) System.out.println(stats);
+
+        return best;
 
     }
 
-    /* Produce next move */
+    /* The move stored for the current position in the solved cache, if any
+     * and still possible, or NO_MOVE
+     */
+    private int known() {
+        int entry = solved == null ? 0 : solved.probe(symmetry.canonical(eval.hash()), player);
+        int move = entry == 0 ? TranspositionTable.NO_MOVE : SolvedCache.move(entry);
+        if (move == TranspositionTable.NO_MOVE)
+            return move;
+        move = Symmetry.inverse(move, symmetry.symmetry());
+        if (!eval.isEmpty(move / 19, move % 19))
+            return TranspositionTable.NO_MOVE;
+        if (DIAG) System.out.println("Solved " + (SolvedCache.result(entry) == SolvedCache.WON ? "win: " : "loss: ")
+                                     + SolvedCache.distance(entry) + " plies");
+        return move;
+    }
+
+    /* Keep a proven result for the current position, with the given side to
+     * move, in the solved cache if there is one
+     */
+    private void remember(int result, int distance, int move, int player) {
+        if (solved == null)
+            return;
+        long key = symmetry.canonical(eval.hash());
+        if (move != TranspositionTable.NO_MOVE)
+            move = Symmetry.transform(move, symmetry.symmetry());
+        solved.store(key, player, result, distance, move);
+    }
+
+    /* Keep the result of a threat search, the AI to move, for every position
+     * along the proof, so that an opponent who follows it is answered at once.
+     * Only a whole proof is kept, one that ends in five: the proof-number
+     * search cuts a line short where the table lost part of it, and its
+     * length is then no distance
+     */
+    private void remember(int result, int[] line) {
+        if (solved == null)
+            return;
+        int side = player;
+        for (int i = 0; i < line.length; i++) {
+            eval.move(line[i] / 19, line[i] % 19, side);
+            symmetry.move(line[i], side);
+            side = -side;
+        }
+        boolean whole = Double.isInfinite(eval.evaluate());
+        int other = result == SolvedCache.WON ? SolvedCache.LOST : SolvedCache.WON;
+        for (int i = line.length - 1; i >= 0; i--) {
+            side = -side;
+            symmetry.undo(line[i], side);
+            eval.undo();
+            if (whole)
+                remember(i % 2 == 0 ? result : other, line.length - i, line[i], side);
+        }
+    }
+
+    /* Time left of the move's budget, which the threat searches before the
+     * main one also come out of
+     */
+    private long left(long start) {
+        return Math.max(1, moveTime - (System.currentTimeMillis() - start));
+    }
+
+    /* Think on the opponent's time: play the reply the last search expects,
+     * and search the resulting position until the opponent moves. The tree
+     * grown under the reply is then found by update() if the guess was right,
+     * and simply dropped if not
+     */
     @Override
-    public Point getMove() {
+    protected void ponder() {
+
+        if (!ponder || root == NodePool.NONE || end)
+            return;
+
+        long entry = tt.probe(symmetry.canonical(eval.hash()));
+        int move = entry == 0 ? TranspositionTable.NO_MOVE : TranspositionTable.move(entry);
+        if (move == TranspositionTable.NO_MOVE)
+            return;
+        move = Symmetry.inverse(move, symmetry.symmetry());
+        if (!eval.isEmpty(move / 19, move % 19))
+            return;
+        int x = move / 19, y = move % 19;
+
+        int pn = pool.child(root, x, y);
+        if (pn == NodePool.NONE)
+            pn = pool.addChild(root, x, y);
+        pool.alpha[pn] = Double.NEGATIVE_INFINITY;
+        pool.beta[pn] = Double.POSITIVE_INFINITY;
+
+        int saved = root;
+        root = pn;
+        eval.move(x, y, -player);
+        solver.move(x, y, -player);
+        symmetry.move(move, -player);
+        for (Worker helper : helpers)
+            helper.move(move, -player);
+        tt.newSearch();
+        pondering = true;
+        stats.clear();
+        ponderBest = search(1, MAX_DEPTH, TranspositionTable.NO_MOVE, Long.MAX_VALUE / 2);
+        SearchMonitor.get().add(stats);
+        ponderMove = move;
+        pondering = false;
+        for (Worker helper : helpers)
+            helper.undo(move, -player);
+        symmetry.undo(move, -player);
+        solver.undo();
+        eval.undo();
+        root = saved;
 
-        long st = System.currentTimeMillis();                                   // Diagnostic
+    }
 
-        alphabeta(eval, root, MainPanel.WHITE, N_DEPTH);
-        root = follow(root);
-        long st2 = System.currentTimeMillis();                                  // Diagnostic
-        eval.move(root.x, root.y, MainPanel.WHITE);
-        evalTime += System.currentTimeMillis() - st2;                           // Diagnostic
-        if (DIAG) {
-            System.out.println("White: " + root.x + "," + root.y + " (" + eval.evaluate() + ")");
-            System.out.println();
+    /* A search thread, with its own evaluation state and game tree */
+    private class Worker implements Runnable {
+
+        final EvalState eval;
+        final Symmetry symmetry;
+        final NodePool pool;
+        final SearchStats stats = new SearchStats();                            // This thread's alone
+        int root;
+        long deadline;                                                          // 0 while no abort allowed
+        long searched;
+        boolean aborted;
+        int start = 1;                                                          // First depth (helpers)
+        int leaf;                                                               // Scratch, below TREE_PLY
+        ThreatSolver solver;                                                    // For leaves, if any
+        int iteration;                                                          // Depth of current one
+        int best;                                                               // At the root, last iteration
+        double score;
+
+        // Move ordering: scratch by remaining depth, killers by ply, and
+        // history by side and move
+        final EvalState.MoveList[] lists = new EvalState.MoveList[MAX_DEPTH + 1];
+        final long[][] orders = new long[MAX_DEPTH + 1][19 * 19 + 1];
+        final int[][] children = new int[MAX_DEPTH + 1][19 * 19 + 1];
+        final int[][] killers = new int[MAX_DEPTH + 1][2];
+        final long[][] history = new long[2][19 * 19];
+
+        // Moves searched at a node with symmetries, by remaining depth: those
+        // marked with the node's stamp, a new one for each such node
+        final int[][] searchedAt = new int[MAX_DEPTH + 1][19 * 19];
+        int stamp;
+
+        Worker(EvalState eval, Symmetry symmetry, NodePool pool) {
+            this.eval = eval;
+            this.symmetry = symmetry;
+            this.pool = pool;
+            for (int i = 0; i < lists.length; i++)
+                lists[i] = new EvalState.MoveList();
+            clearOrdering();
         }
-        if (PV_DIAG) printPrincip(root, MainPanel.WHITE);
 
-        totalTime += System.currentTimeMillis() - st;                           // Diagnostic
+        /* Helper thread logic: deepen until stopped or out of time */
+        public void run() {
+            for (int depth = start; depth <= MAX_DEPTH && !aborted; depth++)
+                deepen(depth, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+        }
+
+        /* Follow a move of the game, or take one back, on a helper's own
+         * copies of the position
+         */
+        void move(int move, int player) {
+            eval.move(move / 19, move % 19, player);
+            symmetry.move(move, player);
+            if (solver != null)
+                solver.move(move / 19, move % 19, player);
+        }
+
+        void undo(int move, int player) {
+            eval.undo();
+            symmetry.undo(move, player);
+            if (solver != null)
+                solver.undo();
+        }
+
+        /* Start a new search: old killers are dropped, and the history aged */
+        void clearOrdering() {
+            for (int[] k : killers)
+                k[0] = k[1] = TranspositionTable.NO_MOVE;
+            for (long[] h : history)
+                for (int m = 0; m < h.length; m++)
+                    h[m] >>= 1;
+        }
+
+        /* Search the root to the given depth within a window - returns the
+         * score, exact only if inside the window
+         */
+        double deepen(int depth, double alpha, double beta) {
+            iteration = depth;
+            best = TranspositionTable.NO_MOVE;
+            leaf = pool.root(0, 0, pool.box[root]);
+            for (int c = pool.first[root], end = c + pool.count[root]; c < end && c >= 0; c++)
+                pool.alpha[c] = pool.beta[c] = Double.POSITIVE_INFINITY;        // Not searched yet
+            return pvs(root, player, depth, alpha, beta);
+        }
+
+        /* Search a child of a node within the given window (for the child) -
+         * returns the score for the node's player
+         */
+        double visit(int nn, int move, int player, int depth, double alpha, double beta) {
+
+            // Modify board position and recurse
+            eval.move(move / 19, move % 19, player);
+            symmetry.move(move, player);
+            if (solver != null)
+                solver.move(move / 19, move % 19, player);
+
+            double score = -pvs(nn, -player, depth - 1, alpha, beta);
+
+            eval.undo();
+            symmetry.undo(move, player);
+            if (solver != null)
+                solver.undo();
+
+            return score;
+
+        }
+
+        /* Search a child, with a null window after the first one: a child
+         * that beats alpha there is searched again with the full window
+         */
+        double visit(int nn, int move, int player, int depth, double alpha, double beta, boolean first) {
+            if (first)
+                return visit(nn, move, player, depth, -beta, -alpha);
+            double score = visit(nn, move, player, depth, -Math.nextUp(alpha), -alpha);
+            if (score > alpha && score < beta && !aborted)
+                score = visit(nn, move, player, depth, -beta, -score);
+            return score;
+        }
+
+        /* Principal variation search: minimax with alpha-beta pruning in the
+         * negamax form, fail-soft - returns the score for player, which is an
+         * upper bound if at most alpha and a lower bound if at least beta.
+         * Every node keeps its last score in the pool, for the parent to pick
+         * a move from
+         */
+        double pvs(int node, int player, int depth, double alpha, double beta) {
+
+            // Check the budget every so often, once there is a move to fall back on
+            if ((++searched & CHECK_NODES) == 0 && deadline > 0)
+                aborted = end || System.currentTimeMillis() >= deadline
+                       || (this != main ? stop : pondering ? opponentMoved() : searched >= nodeLimit);
+            if (aborted)
+                return 0;
+            stats.node(iteration);
+
+            double heuristic = player * eval.evaluate();
+            stats.evals++;
+
+            // Check in transposition table (never at the root, whose children
+            // are needed to pick a move). Early on, all images of the position
+            // share an entry, its move seen in the image keyed by
+            long key = symmetry.canonical(eval.hash());
+            int image = symmetry.symmetry();
+            long entry = tt.probe(key);
+            stats.probes++;
+            if (entry != 0)
+                stats.hits++;
+            if (node != root && entry != 0 && TranspositionTable.depth(entry) >= depth) {
+                double score = TranspositionTable.score(entry);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                    || bound == TranspositionTable.LOWER && score >= beta
+                    || bound == TranspositionTable.UPPER && score <= alpha)
+                    return pool.alpha[node] = pool.beta[node] = score;
+            }
 
-        return new Point(root.x, root.y);
+            // A position solved in an earlier game needs no search
+            if (entry == 0 && solved != null && node != root && depth >= SOLVED_DEPTH) {
+                int known = solved.probe(key, player);
+                if (known != 0)
+                    return pool.alpha[node] = pool.beta[node] = SolvedCache.result(known) == SolvedCache.WON
+                                                                ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+            }
+
+            // Leaf is reached
+            if (depth == 0 || Double.isInfinite(heuristic)) {
+                if (solver != null && !Double.isInfinite(heuristic)
+                    && solver.wins(player, false, LEAF_PLY, LEAF_NODES))
+                    heuristic = Double.POSITIVE_INFINITY;
+                return pool.alpha[node] = pool.beta[node] = heuristic;
+            }
+
+            // Full depth not reached - keep expanding
+            double alpha0 = alpha, bestScore = Double.NEGATIVE_INFINITY;
+            int best = TranspositionTable.NO_MOVE;
+            boolean quiet = true;                                               // Best move is no win / block
+            int ply = iteration - depth, tried = 0;
+            boolean keep = ply < TREE_PLY;
+            boolean fresh = keep && pool.first[node] == NodePool.NONE;
+            stats.interior++;
+
+            // Stage 1: the best move from the previous iteration, searched
+            // before any other move is generated
+            int hashMove = entry == 0 ? TranspositionTable.NO_MOVE : TranspositionTable.move(entry);
+            if (hashMove != TranspositionTable.NO_MOVE)
+                hashMove = Symmetry.inverse(hashMove, image);
+            boolean restricted = node == root && replies.size() > 0;
+            if (hashMove != TranspositionTable.NO_MOVE && eval.isEmpty(hashMove / 19, hashMove % 19)
+                && (!restricted || replies.indexOf(hashMove) >= 0)) {
+                int nn = keep ? pool.child(node, hashMove / 19, hashMove % 19) : leaf;
+                if (nn == NodePool.NONE)
+                    nn = pool.addChild(node, hashMove / 19, hashMove % 19);
+                double score = visit(nn, hashMove, player, depth, alpha, beta, true);
+                if (aborted)
+                    return 0;
+                tried++;
+                bestScore = score;
+                best = hashMove;
+                alpha = Math.max(alpha, score);
+            } else
+                hashMove = TranspositionTable.NO_MOVE;
+
+            // Where the position is its own image, a move's images lead to
+            // images of the same position, and only the first one is searched
+            int automorphisms = symmetry.automorphisms();
+            int[] done = searchedAt[depth];
+            int mark = automorphisms == 0 ? 0 : ++stamp;
+            if (automorphisms != 0 && hashMove != TranspositionTable.NO_MOVE)
+                done[hashMove] = mark;
+
+            // Later stages, only without a cutoff: wins and forced blocks,
+            // then killers, then the rest by history. Moves are picked one at
+            // a time, so that no more are ordered than are searched
+            if (alpha < beta) {
+
+                EvalState.MoveList ml = lists[depth];
+                if (restricted)
+                    ml.copy(replies);
+                else
+                    eval.listMoves(ml);
+
+                int n = ml.size(), side = side(player);
+                long[] order = orders[depth];
+                int[] child = children[depth];
+                for (int i = 0; i < n; i++) {
+                    int m = ml.move(i);
+                    long stage = Double.isInfinite(ml.value(i)) ? 3
+                               : m == killers[ply][0] || m == killers[ply][1] ? 2 : 1;
+                    order[i] = m == hashMove ? -1 : stage << 56 | Math.min(history[side][m], HISTORY_MAX) << 12 | 0xFFF - i;
+                }
+
+                // Create children for all given moves, unless done by an
+                // earlier search
+                if (fresh) {
+                    int c = pool.grow(node, n - (ml.indexOf(hashMove) < 0 ? 0 : 1));
+                    for (int i = 0; i < n; i++)
+                        if (order[i] >= 0) {
+                            pool.setMove(node, c, ml.x(i), ml.y(i));
+                            child[i] = c++;
+                        }
+                }
+
+                for (int k = 0; k < n; k++) {
+
+                    // Pick the next move
+                    int i = 0;
+                    for (int j = 1; j < n; j++)
+                        if (order[j] > order[i])
+                            i = j;
+                    if (order[i] < 0)
+                        break;
+                    order[i] = -1;
+                    int x = ml.x(i), y = ml.y(i);
+                    if (automorphisms != 0 && !first(ml.move(i), automorphisms, done, mark))
+                        continue;
+
+                    // Get the next node, adding it if the move is new
+                    int nn = !keep ? leaf : fresh ? child[i] : pool.child(node, x, y);
+                    if (nn == NodePool.NONE)
+                        nn = pool.addChild(node, x, y);
+
+                    double score = visit(nn, ml.move(i), player, depth, alpha, beta, best == TranspositionTable.NO_MOVE);
+                    if (aborted)
+                        return 0;
+                    tried++;
+
+                    // Update and check for cutoff
+                    if (score > bestScore || best == TranspositionTable.NO_MOVE) {
+                        bestScore = score;
+                        best = ml.move(i);
+                        quiet = !Double.isInfinite(ml.value(i));
+                    }
+                    alpha = Math.max(alpha, score);
+                    if (alpha >= beta)
+                        break;
+
+                }
+
+            }
+
+            // No moves - nothing to add to the evaluation
+            if (best == TranspositionTable.NO_MOVE)
+                return pool.alpha[node] = pool.beta[node] = heuristic;
+
+            if (bestScore >= beta) {
+                stats.cutoffs++;
+                if (tried == 1)
+                    stats.firstCutoffs++;
+            }
+
+            // Remember a quiet move that caused a cutoff, for its siblings and
+            // for the rest of the search
+            if (bestScore >= beta && quiet && best != TranspositionTable.NO_MOVE) {
+                if (killers[ply][0] != best) {
+                    killers[ply][1] = killers[ply][0];
+                    killers[ply][0] = best;
+                }
+                history[side(player)][best] += depth * depth;
+            }
+
+            int bound = bestScore >= beta ? TranspositionTable.LOWER
+                      : bestScore > alpha0 ? TranspositionTable.EXACT : TranspositionTable.UPPER;
+            tt.store(key, bestScore, bound, depth, Symmetry.transform(best, image));
+            if (node == root) {
+                this.best = best;
+                this.score = bestScore;
+            }
+            return pool.alpha[node] = pool.beta[node] = bestScore;
+
+        }
+
+        private int side(int player) {
+            return player == GameRules.WHITE ? 0 : 1;
+        }
+
+        /* Check that no image of a move under the given symmetries is marked
+         * searched at the node with the given stamp, and mark it
+         */
+        private boolean first(int move, int automorphisms, int[] done, int mark) {
+            for (int s = 1; s < Symmetry.COUNT; s++)
+                if ((automorphisms & 1 << s) != 0 && done[Symmetry.transform(move, s)] == mark)
+                    return false;
+            done[move] = mark;
+            return true;
+        }
 
     }
 
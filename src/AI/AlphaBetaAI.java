@@ -7,9 +7,8 @@
 
 package AI;
 
-import Main.MainPanel;
-import java.awt.Point;
-import java.util.*;
+import Main.BitBoard;
+import Main.GameRules;
 
 /**
  *
@@ -19,208 +18,251 @@ public class AlphaBetaAI extends StupidAI {
 
     protected static final int DEPTH = 4;                                       // Needs to be at least 4
 
-    // Diagnostics
-    protected static long totalTime = 0;
-    protected static long evalTime = 0;
-    protected static long nodeTime = 0;
-    protected static long nodes = 1;
+    // Counts of the last search
+    protected final SearchStats stats = new SearchStats();
 
     // Transpositions
-    Hashtable<Integer,Node> transpositions = new Hashtable<Integer,Node>();
-    protected static long[][] hashBase = new long[19][19];
-    protected static long totTrans = 0;
+    protected static final int TT_MB = 32;                                      // Default table size
+    protected final TranspositionTable tt;
+    protected long hash = 0;                                                    // Zobrist key of board
 
-    Node root;
+    // Game tree
+    protected final NodePool pool = new NodePool();
+    protected int root = NodePool.NONE;
 
-    /* Initialize base array for hash */
-    static {
-        for (int i = 0; i < 19; i++)
-            for (int j = 0; j < 19; j++)
-                hashBase[i][j] = RNG.nextInt();
+    public AlphaBetaAI() {
+        this(TT_MB);
+    }
+
+    /* Create with a transposition table of the given size, which is kept for
+     * the whole game
+     */
+    public AlphaBetaAI(int ttMegabytes) {
+        tt = new TranspositionTable(ttMegabytes);
+        SearchMonitor.get();                                                    // Registering is slow: not on a move
     }
 
-    public AlphaBetaAI(MainPanel parent) {
-        super(parent);
+    /* Put a stone on the internal board, keeping the key up to date */
+    @Override
+    protected void place(int x, int y, int player) {
+        super.place(x, y, player);
+        hash ^= Zobrist.key(player, x, y);
     }
 
-    /* Update internal state through game state */
+    /* Update internal state through opponent's move */
     @Override
     public void update() {
         super.update();
-        if (root == null) {
-            root = new Node(lastX, lastY, upperLeft, lowerRight);
+        int next = root == NodePool.NONE ? NodePool.NONE : pool.child(root, lastX, lastY);
+        if (next == NodePool.NONE) {
+            pool.reset();
+            root = pool.root(lastX, lastY, box());
         } else {
-            root = root.next.get(new Point(lastX, lastY));
-            if (root == null)
-                root = new Node(lastX, lastY, upperLeft, lowerRight);
-            else {
-                root.alpha = Double.NEGATIVE_INFINITY;
-                root.beta = Double.POSITIVE_INFINITY;
-            }
+            root = pool.compact(next);
+            pool.alpha[root] = Double.NEGATIVE_INFINITY;
+            pool.beta[root] = Double.POSITIVE_INFINITY;
         }
     }
 
-    /* Time diagnostic */
-    public static void printDiagnostic() {
-        System.out.println("Total thinking time: " + totalTime + " ms");
-        System.out.println("Evaluation time: " + evalTime + " ms");
-        System.out.println("Node expansion time: " + nodeTime + " ms");
-        System.out.println("Total number of nodes: " + nodes);
-        System.out.println("Total number of transpositions: " + totTrans);
-        totalTime = 0;
-        evalTime = 0;
-        nodeTime = 0;
-        nodes = 1;
-        totTrans = 0;
+    /* Update internal state by taking back the last stone. The tree starts
+     * again from the position before it - the move into its root is not
+     * known, nor needed
+     */
+    @Override
+    public void undo(int x, int y) {
+        hash ^= Zobrist.key(board.get(x, y), x, y);
+        super.undo(x, y);
+        pool.reset();
+        root = pool.root(0, 0, box());
+    }
+
+    /* Current bounding box of stones, packed */
+    protected int box() {
+        return box;
     }
 
     /* Node diagnostic */
-    protected static void printNode(Node node, int player, int depth) {
-        System.out.print(node.x + "," + node.y + " (");
-        if (player == MainPanel.WHITE)
+    protected static void printNode(NodePool pool, int node, int player, int depth) {
+        System.out.print(pool.x(node) + "," + pool.y(node) + " (");
+        if (player == GameRules.WHITE)
             System.out.print("Black to move / ");
         else
             System.out.print("White to move / ");
         System.out.println("depth " + depth + ")");
-        System.out.println("  Alpha: " + node.alpha);
-        System.out.println("  Beta: " + node.beta);
+        System.out.println("  Alpha: " + pool.alpha[node]);
+        System.out.println("  Beta: " + pool.beta[node]);
     }
 
     /* Line diagnostic */
-    protected static void printPrincip(Node node, int player) {
-        if (node != null) {
-            printNode(node, player, -1);
-            printPrincip(follow(node), -player);
+    protected static void printPrincip(NodePool pool, int node, int player) {
+        if (node != NodePool.NONE) {
+            printNode(pool, node, player, -1);
+            printPrincip(pool, follow(pool, node), -player);
         }
     }
 
     /* Board diagnostic */
-    protected static void printBoard(int[][] board) {
-        for (int i = 0; i < 18; i++)
-            for (int j = 0; j < 18; j++)
-                if (board[i][j] != 0)
-                    System.out.print(i + "," + j + ": " + board[i][j] + " ");
+    protected static void printBoard(BitBoard board) {
+        for (int i = 0; i < 19; i++)
+            for (int j = 0; j < 19; j++)
+                if (!board.isEmpty(i, j))
+                    System.out.print(i + "," + j + ": " + board.get(i, j) + " ");
         System.out.println();
     }
 
     /* Follow the tree down a random move among the "best" evaluated */
-    protected static Node follow(Node node) {
+    protected static int follow(NodePool pool, int node) {
         double min = Double.POSITIVE_INFINITY;
-        ArrayList<Node> best = new ArrayList<Node>();
-        Enumeration<Node> elems = node.next.elements();
-        while (elems.hasMoreElements()) {
-            Node cur = elems.nextElement();
-            if (cur.alpha < min) {
-                min = cur.alpha;
-                best.clear();
-                best.add(cur);
-            } else if (cur.alpha == min)
-                best.add(cur);
+        int best = NodePool.NONE, ties = 0;
+        for (int c = pool.first[node], end = c + pool.count[node]; c < end && c >= 0; c++) {
+            if (pool.alpha[c] < min) {
+                min = pool.alpha[c];
+                best = c;
+                ties = 1;
+            } else if (pool.alpha[c] == min && RNG.nextInt(++ties) == 0)
+                best = c;                                                       // Uniform among ties
         }
-        if (best.size() > 0) {
-            int n = RNG.nextInt(best.size());
-            return best.get(n);
-        } else
-            return null;
+        return best;
     }
 
-    /* Hash for transpositions */
-    protected static int hash2D(int[][] board) {
-        int hash = 0;
-        for (int i = 0; i < 19; i++)
-            for (int j = 0; j < 19; j++)
-                hash += board[i][j] * hashBase[i][j];
-        return hash;
+    /* Hash for transpositions, computed from scratch (the search keeps the
+     * same key up to date incrementally in hash)
+     */
+    protected static long hash2D(BitBoard board) {
+        return Zobrist.key(board);
     }
 
     /* Evaluate the given point in the given direction */
-    protected static double evalDir(int[][] board, int x, int y, int dx, int dy) {
-        if (board[x][y] == 0)
+    protected static double evalDir(BitBoard board, int x, int y, int dx, int dy) {
+        int stone = board.get(x, y);
+        if (stone == 0)
             return 0;
         else {
             int i;
-            for (i = 1; i < 5 && MainPanel.inBoard(x+i*dx, y+i*dy) && board[x+i*dx][y+i*dy] == board[x][y]; i++);
-            return board[x][y] / (double)(5 - i);
+            for (i = 1; i < 5 && GameRules.inBoard(x+i*dx, y+i*dy) && board.get(x+i*dx, y+i*dy) == stone; i++);
+            return stone / (double)(5 - i);
         }
     }
 
     /* Evaluate the given point */
-    protected static double evalPoint(int[][] board, int x, int y) {
+    protected static double evalPoint(BitBoard board, int x, int y) {
         double status = 0;
         for (int i = 0; i < 4; i++)
-            status += evalDir(board, x, y, MainPanel.DIR[i][0], MainPanel.DIR[i][1]);
+            status += evalDir(board, x, y, GameRules.DIR[i][0], GameRules.DIR[i][1]);
         return status;
     }
 
     /* Evaluate the board */
-    protected double evalBoard(int[][] board, Point ul, Point lr) {
-        long st = System.currentTimeMillis();   // Diagnostic
+    protected double evalBoard(BitBoard board, int box) {
+        stats.evals++;
         double status = 0;
-        for (int i = ul.x; i <= lr.x; i++)
-            for (int j = ul.y; j <= lr.y; j++)
+        for (int i = NodePool.ulx(box); i <= NodePool.lrx(box); i++)
+            for (int j = NodePool.uly(box); j <= NodePool.lry(box); j++)
                 status += evalPoint(board, i, j);
-        evalTime += System.currentTimeMillis() - st;
         return status;
     }
 
+    /* Try to settle the node from a transposition entry - true if settled */
+    protected static boolean probe(long entry, NodePool pool, int node, int depth) {
+        if (entry == 0 || TranspositionTable.depth(entry) < depth)
+            return false;
+        double score = TranspositionTable.score(entry);
+        switch (TranspositionTable.bound(entry)) {
+            case TranspositionTable.EXACT:
+                pool.alpha[node] = pool.beta[node] = score;
+                return true;
+            case TranspositionTable.LOWER:
+                if (score >= pool.beta[node]) {
+                    pool.alpha[node] = Double.POSITIVE_INFINITY;
+                    return true;
+                }
+                return false;
+            case TranspositionTable.UPPER:
+                return score <= pool.alpha[node];
+        }
+        return false;
+    }
+
     /* Minimax search with alpha-beta pruning and negamax simplification */
-    protected void alphabeta(int[][] board, Node node, int player, int depth) {
+    protected void alphabeta(BitBoard board, int node, int player, int depth) {
+
+        int box = pool.box[node];
+        double heuristic = player * evalBoard(board, box);
+
+        // Check in transposition table (never at the root, whose children are
+        // needed to pick a move)
+        long entry = 0;
+        if (node != root) {
+            entry = tt.probe(hash);
+            stats.probes++;
+            if (entry != 0)
+                stats.hits++;
+        }
+        if (probe(entry, pool, node, depth)) {
 
-        double heuristic = player * evalBoard(board, node.upperLeft, node.lowerRight);
+        // Leaf is reached
+        } else if (depth == 0 || Math.abs(heuristic) == Double.POSITIVE_INFINITY) {
+            pool.alpha[node] = pool.beta[node] = heuristic;
 
-        // Check in transposition table
-        if (transpositions.containsKey(hash2D(board))) {
-            Node tn = transpositions.get(hash2D(board));
-            node.alpha = tn.alpha;
-            node.beta = tn.beta;
-            totTrans++;
+        // Full depth not reached - keep expanding
         } else {
 
-            // Leaf is reached
-            if (depth == 0 || Math.abs(heuristic) == Double.POSITIVE_INFINITY) {
-                node.alpha = node.beta = heuristic;
-
-            // Full depth not reached - keep expanding
-            } else {
-
-                boolean cutoff = false;
-
-                // Loop through all nodes within window
-                for (int i = node.upperLeft.x - BUFFER; i <= node.lowerRight.x + BUFFER && !cutoff; i++)
-                    for (int j = node.upperLeft.y - BUFFER; j <= node.lowerRight.y + BUFFER && !cutoff; j++)
-                        if (MainPanel.inBoard(i, j) && board[i][j] == 0) {
-
-                            long st = System.currentTimeMillis();               // Diagnostic
-
-                            // Get the next node or create a new one
-                            Node nn = node.next.get(new Point(i, j));
-                            if (nn == null) {
-                                nn = new Node(node, i, j);
-                                node.next.put(new Point(i, j), nn);
-                            }
-                            nn.alpha = -node.beta;
-                            nn.beta = -node.alpha;
-                            nodes++;                                            // Diagnostic
-
-                            nodeTime += System.currentTimeMillis() - st;        // Diagnostic
-
-                            // Modify board position and recurse
-                            board[i][j] = player;
-                            alphabeta(board, nn, -player, depth - 1);
-                            board[i][j] = 0;
-
-                            // Update and check for cutoff
-                            node.alpha = Math.max(node.alpha, -nn.alpha);
-                            if (node.alpha >= node.beta) {
-                                cutoff = true;
-                                node.alpha = Double.POSITIVE_INFINITY;
-                            }
+            boolean cutoff = false;
+            double alpha = pool.alpha[node];
+            int best = TranspositionTable.NO_MOVE;
+            stats.interior++;
+
+            // Create children for all empty points within window, unless done
+            // by an earlier search
+            int ulx = NodePool.ulx(box) - BUFFER, uly = NodePool.uly(box) - BUFFER,
+                lrx = NodePool.lrx(box) + BUFFER, lry = NodePool.lry(box) + BUFFER;
+            if (pool.first[node] == NodePool.NONE) {
+                int n = 0;
+                for (int i = ulx; i <= lrx; i++)
+                    for (int j = uly; j <= lry; j++)
+                        if (GameRules.inBoard(i, j) && board.isEmpty(i, j))
+                            n++;
+                int c = pool.expand(node, n);
+                for (int i = ulx; i <= lrx; i++)
+                    for (int j = uly; j <= lry; j++)
+                        if (GameRules.inBoard(i, j) && board.isEmpty(i, j))
+                            pool.setMove(node, c++, i, j);
+            }
 
-                        }
+            // Loop through all children
+            for (int nn = pool.first[node], end = nn + pool.count[node]; nn < end && !cutoff; nn++) {
+
+                int i = pool.x(nn), j = pool.y(nn);
+                pool.alpha[nn] = -pool.beta[node];
+                pool.beta[nn] = -pool.alpha[node];
+                stats.node(DEPTH);
+
+                // Modify board position and recurse
+                board.set(i, j, player);
+                hash ^= Zobrist.key(player, i, j);
+                alphabeta(board, nn, -player, depth - 1);
+                hash ^= Zobrist.key(player, i, j);
+                board.clear(i, j);
+
+                // Update and check for cutoff
+                if (-pool.alpha[nn] > pool.alpha[node]) {
+                    pool.alpha[node] = -pool.alpha[nn];
+                    best = TranspositionTable.move(i, j);
+                }
+                if (pool.alpha[node] >= pool.beta[node]) {
+                    cutoff = true;
+                    stats.cutoffs++;
+                    if (nn == pool.first[node])
+                        stats.firstCutoffs++;
+                }
 
             }
 
-            transpositions.put(hash2D(board), node);
+            int bound = cutoff ? TranspositionTable.LOWER
+                      : pool.alpha[node] > alpha ? TranspositionTable.EXACT : TranspositionTable.UPPER;
+            tt.store(hash, pool.alpha[node], bound, depth, best);
+            if (cutoff)
+                pool.alpha[node] = Double.POSITIVE_INFINITY;
 
         }
 
@@ -228,45 +270,19 @@ public class AlphaBetaAI extends StupidAI {
 
     /* Produce next move */
     @Override
-    public Point getMove() {
+    public int getMove() {
 
-        long st = System.currentTimeMillis();                                   // Diagnostic
+        long st = System.nanoTime();
 
-        alphabeta(board, root, MainPanel.WHITE, DEPTH);
-        root = follow(root);
-        transpositions.clear();
+        stats.clear();
+        tt.newSearch();
+        alphabeta(board, root, player, DEPTH);
+        root = pool.compact(follow(pool, root));
 
-        totalTime += System.currentTimeMillis() - st;                           // Diagnostic
+        SearchMonitor.get().add(stats);
+        SearchMonitor.get().addMove(System.nanoTime() - st);
 
-        return new Point(root.x, root.y);
-
-    }
-
-    /* A node in the game tree, representing a single move (independent of the
-     * game state, to save space)
-     */
-    protected static class Node {
-
-        int x, y;
-        double alpha = Double.NEGATIVE_INFINITY, beta = Double.POSITIVE_INFINITY;
-        Point upperLeft, lowerRight;
-        Hashtable<Point,Node> next = new Hashtable<Point,Node>();
-
-        private void init(int x, int y, Point ul, Point lr) {
-            this.x = x;
-            this.y = y;
-            upperLeft = (Point)ul.clone();
-            lowerRight = (Point)lr.clone();
-        }
-
-        protected Node(int x, int y, Point ul, Point lr) {
-            init(x, y, ul, lr);
-        }
-
-        protected Node(Node parent, int x, int y) {
-            init(x, y, parent.upperLeft, parent.lowerRight);
-            stretch(upperLeft, lowerRight, x, y);
-        }
+        return pool.x(root) * 19 + pool.y(root);
 
     }
 
@@ -1,64 +1,148 @@
 /*
- * BasAI: Interface for a simple AI.
+ * BasAI: Interface for a simple AI. Works either synchronously, each call of
+ * the Engine interface doing its work at once, or on a thread of its own,
+ * given an output to hand its moves to: then the opponent's moves are only
+ * queued, and the thread replies to them in turn.
  */
 
 package AI;
 
-import Main.MainPanel;
-import java.awt.Point;
+import Main.GameRules;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.IntConsumer;
 
 /**
  *
  * @author samuel
  */
-public abstract class BaseAI implements Runnable {
+public abstract class BaseAI implements Engine, Runnable {
 
-    protected static final long SLEEP = 1000;
+    private static final int END = -1;                                          // Wakes the AI to die
+    private static final int CENTRE = 9 * 19 + 9;                               // First move of a game
 
-    protected final MainPanel parent;
-    protected boolean end = false;
+    protected int player = GameRules.WHITE;
+    protected volatile boolean end = false;
+    private int stones;                                                         // On the board, both sides
 
-    public BaseAI(MainPanel parent) {
-        this.parent = parent;
+    // Opponent's moves, handed over by the game when on a thread
+    private final BlockingQueue<Integer> moves = new LinkedBlockingQueue<Integer>();
+    private IntConsumer output;
+    protected int lastX = -1, lastY = -1;
+
+    /* Set the side the AI plays */
+    public void setPlayer(int player) {
+        this.player = player;
+    }
+
+    /* The side the AI plays */
+    public int player() {
+        return player;
+    }
+
+    /* Have run() hand the AI's moves to the given output */
+    public void setOutput(IntConsumer output) {
+        this.output = output;
     }
 
     /* Signal end of game */
     public void end() {
         end = true;
+        moves.offer(END);
+    }
+
+    /* Take the opponent's move - or, on a thread, hand it over, giving the
+     * AI the turn
+     */
+    public void opponentMoved(int x, int y) {
+        if (output != null)
+            moves.offer(x * 19 + y);
+        else
+            take(x, y);
+    }
+
+    /* Put a stone on the board out of turn - not while on a thread */
+    public void setUp(int x, int y, int player) {
+        if (player == this.player) {
+            update(x, y);
+            stones++;
+        } else
+            take(x, y);
+    }
+
+    /* Take back the last stone - not while on a thread */
+    public void takeBack(int x, int y) {
+        undo(x, y);
+        stones--;
+    }
+
+    /* Check whether the opponent's move is waiting to be handled */
+    protected boolean opponentMoved() {
+        return !moves.isEmpty();
+    }
+
+    /* Produce and play a move: the centre on an empty board, where there is
+     * nothing to search, and otherwise getMove()'s
+     */
+    public int move() {
+        int move = stones == 0 ? CENTRE : getMove();
+        update(move / 19, move % 19);
+        stones++;
+        return move;
     }
 
-    /* AI thread logic: produce move and update if on turn, otherwise sleep */
+    private void take(int x, int y) {
+        lastX = x;
+        lastY = y;
+        stones++;
+        update();
+    }
+
+    /* AI thread logic: move first if black, then wait for the opponent's
+     * move (pondering meanwhile if the AI wants to), and produce and play a
+     * move in reply
+     */
     public void run() {
+        if (player == GameRules.BLACK && stones == 0 && !end)
+            output.accept(move());
+
         // Loop while game is unfinished, i.e. until notified by the game
         while (!end) {
+
+            // Off turn - think, then wait
+            ponder();
+            int move;
+            try {
+                move = moves.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+
+            // On turn - AI logic
             if (!end) {
-                // On turn - AI logic
-                if (parent.turn != parent.human) {
-                    update();
-                    Point move = getMove();
-                    update(move.x, move.y);
-                    parent.update(move.x, move.y, -parent.human);
-
-                // Off turn - sleep
-                } else {
-                    try {
-                        Thread.sleep(SLEEP);
-                    } catch (InterruptedException e) {}
-                }
+                take(move / 19, move % 19);
+                output.accept(move());
             }
+
         }
 
         die();
     }
 
-    /* Update internal state */
+    /* Update internal state through opponent's move (lastX, lastY) */
     public abstract void update();
 
     /* Update internal state through own move */
     public abstract void update(int x, int y);
 
-    /* Produce next move */
-    public abstract Point getMove();
+    /* Update internal state by taking back the last stone, of either side */
+    public abstract void undo(int x, int y);
+
+    /* Produce next move, packed */
+    public abstract int getMove();
+
+    /* Use the opponent's time until opponentMoved() - by default do nothing */
+    protected void ponder() {}
 
     /* The AI's last words */
     void die() {}
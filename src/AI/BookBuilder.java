@@ -0,0 +1,206 @@
+/*
+ * BookBuilder: Builds an OpeningBook from games - played by the engine
+ * against itself from Tournament's balanced openings, or imported from a
+ * text file with one game per line, its moves as "x,y" separated by spaces,
+ * black first. Each move of a game's first plies counts for the position it
+ * was played in, 2 for a win of the player making it and 1 for a draw; moves
+ * made in fewer than minGames games, and moves that lost every game they
+ * were played in (weight 0), are left out.
+ * Usage: BookBuilder out.book selfplay games [engine] [plies] [minGames] [threads]
+ *        BookBuilder out.book import games.txt [plies] [minGames]
+ */
+
+package AI;
+
+import Main.BitBoard;
+import Main.GameRules;
+import Main.GameSession;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ * @author samuel
+ */
+public class BookBuilder {
+
+    private static final int PLIES = 12;
+    private static final int MIN_GAMES = 1;
+    private static final String ENGINE = "ab:nodes=20000";
+
+    private static final PrintStream OUT = System.out;
+
+    // Games and weights of the moves in each position, by canonical key
+    private final Map<Long, Map<Integer, int[]>> positions = new HashMap<Long, Map<Integer, int[]>>();
+    private final int plies;
+    private int games;
+
+    public BookBuilder(int plies) {
+        this.plies = plies;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        if (args.length < 3) {
+            OUT.println("Usage: BookBuilder out.book selfplay games [engine] [plies] [minGames] [threads]");
+            OUT.println("       BookBuilder out.book import games.txt [plies] [minGames]");
+            return;
+        }
+        boolean selfPlay = args[1].equals("selfplay");
+        int k = selfPlay ? 4 : 3;
+        int plies = args.length > k ? Integer.parseInt(args[k]) : PLIES;
+        int minGames = args.length > k + 1 ? Integer.parseInt(args[k + 1]) : MIN_GAMES;
+        final BookBuilder builder = new BookBuilder(plies);
+
+        long st = System.currentTimeMillis();
+        if (selfPlay) {
+            final int games = Integer.parseInt(args[2]);
+            final String engine = args.length > 3 ? args[3] : ENGINE;
+            int threads = args.length > 6 ? Integer.parseInt(args[6]) : Runtime.getRuntime().availableProcessors();
+            System.setOut(new PrintStream(new OutputStream() {                  // Engines' diagnostics
+                public void write(int b) {}
+                public void write(byte[] b, int off, int len) {}
+            }));
+            final int[][] openings = Tournament.openings();
+            final AtomicInteger next = new AtomicInteger();
+            Thread[] workers = new Thread[threads];
+            for (int i = 0; i < threads; i++) {
+                workers[i] = new Thread(new Runnable() {
+                    public void run() {
+                        for (int g; (g = next.getAndIncrement()) < games; )
+                            builder.selfPlay(openings[g % openings.length], engine);
+                    }
+                });
+                workers[i].start();
+            }
+            for (Thread w : workers)
+                w.join();
+        } else
+            builder.importGames(args[2]);
+
+        int entries = builder.write(args[0], minGames);
+        OUT.println(builder.games + " games, " + builder.positions.size() + " positions, " + entries
+                    + " entries written to " + args[0] + " (" + (System.currentTimeMillis() - st) + " ms)");
+
+    }
+
+    /* Play a game from the opening, and count it */
+    void selfPlay(int[] opening, String engine) {
+        GameSession session = new GameSession(Tournament.engine(engine), Tournament.engine(engine));
+        int[] moves = new int[19 * 19];
+        int n = 0, player = GameRules.BLACK;
+        for (int p : opening) {
+            session.setUp(p / 19, p % 19, player);
+            moves[n++] = p;
+            player = -player;
+        }
+        while (!session.isOver() && n < plies)
+            moves[n++] = session.step();
+        session.playOut();
+        session.end();
+        add(Arrays.copyOf(moves, n), session.winner());
+    }
+
+    /* Count the games in a text file */
+    void importGames(String file) throws IOException {
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                String[] tokens = line.split("\\s+");
+                int[] moves = new int[tokens.length];
+                GameRules game = new GameRules();
+                int n = 0, winner = GameRules.EMPTY, player = GameRules.BLACK;
+                for (String token : tokens) {
+                    String[] xy = token.split(",");
+                    int x = Integer.parseInt(xy[0].trim()), y = Integer.parseInt(xy[1].trim());
+                    if (!game.isLegal(x, y))
+                        break;
+                    winner = game.play(x, y, player);
+                    moves[n++] = x * 19 + y;
+                    player = -player;
+                }
+                add(Arrays.copyOf(moves, n), winner);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /* Count a game's first plies, given its winner (or EMPTY for a draw) */
+    synchronized void add(int[] moves, int winner) {
+        BitBoard board = new BitBoard();
+        int[] symmetry = new int[1];
+        int player = GameRules.BLACK;
+        for (int i = 0; i < Math.min(plies, moves.length); i++) {
+            long key = OpeningBook.canonical(board, symmetry);
+            Map<Integer, int[]> moveStats = positions.get(key);
+            if (moveStats == null)
+                positions.put(key, moveStats = new HashMap<Integer, int[]>());
+            int move = Symmetry.transform(moves[i], symmetry[0]);
+            int[] stats = moveStats.get(move);                                  // Games, weight
+            if (stats == null)
+                moveStats.put(move, stats = new int[2]);
+            stats[0]++;
+            stats[1] += winner == player ? 2 : winner == GameRules.EMPTY ? 1 : 0;
+            board.set(moves[i] / 19, moves[i] % 19, player);
+            player = -player;
+        }
+        games++;
+    }
+
+    /* Write the book, sorted by key and move - returns the number of entries */
+    int write(String file, int minGames) throws IOException {
+
+        long[] keys = new long[positions.size()];
+        int k = 0;
+        for (long key : positions.keySet())
+            keys[k++] = key;
+        Arrays.sort(keys);
+
+        // Count first, for the header
+        int entries = 0;
+        for (long key : keys)
+            for (int[] stats : positions.get(key).values())
+                if (stats[0] >= minGames && stats[1] > 0)                      // Draws count
+                    entries++;
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(OpeningBook.MAGIC);
+            out.writeLong(entries);
+            out.writeInt(0);
+            for (long key : keys) {
+                Map<Integer, int[]> moveStats = positions.get(key);
+                Integer[] moves = moveStats.keySet().toArray(new Integer[0]);
+                Arrays.sort(moves);
+                for (int move : moves) {
+                    int[] stats = moveStats.get(move);
+                    if (stats[0] >= minGames && stats[1] > 0) {
+                        out.writeLong(key);
+                        out.writeInt(move);
+                        out.writeInt(stats[1]);
+                    }
+                }
+            }
+        } finally {
+            out.close();
+        }
+        return entries;
+
+    }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Engine: A player of the game, as seen from outside - told the opponent's
+ * moves, asked for its own, and nothing else. Moves are packed as x * 19 + y.
+ * Nothing here depends on a window, so that games can be played headless,
+ * many at a time (see Main.GameSession).
+ */
+
+package AI;
+
+/**
+ *
+ * @author samuel
+ */
+public interface Engine {
+
+    /* Set the side the engine plays, GameRules.BLACK or WHITE (WHITE by
+     * default) - before the first move of the game
+     */
+    void setPlayer(int player);
+
+    /* The side the engine plays */
+    int player();
+
+    /* Put a stone of either side on the engine's board out of turn, to set
+     * up a position - before the engine is asked for a move
+     */
+    void setUp(int x, int y, int player);
+
+    /* Take back the last stone on the engine's board, of either side, at the
+     * given point - not while the engine is thinking
+     */
+    void takeBack(int x, int y);
+
+    /* Tell the engine the opponent's move */
+    void opponentMoved(int x, int y);
+
+    /* Produce the engine's move and play it on its own board - returns the
+     * move, packed
+     */
+    int move();
+
+    /* Signal end of game, releasing whatever the engine holds */
+    void end();
+
+}
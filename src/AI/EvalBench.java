@@ -0,0 +1,97 @@
+/*
+ * EvalBench: Cost of the evaluators' make / evaluate / list / undo cycle on
+ * random positions, and of a fixed-depth ABEvalAI search with each of them on
+ * the SMPBench position.
+ * Usage: EvalBench [depth]
+ */
+
+package AI;
+
+import Main.GameRules;
+import java.util.Random;
+
+/**
+ *
+ * @author samuel
+ */
+public class EvalBench {
+
+    private static final int POSITIONS = 200;
+    private static final int STONES = 24;
+    private static final int ROUNDS = 20;
+    private static final int WARM_UP = 9;                                      // Untimed passes
+
+    public static void main(String[] args) {
+
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+
+        // Evaluation cycle
+        for (int round = 0; round <= WARM_UP; round++) {
+            if (round == WARM_UP)
+                System.out.println("eval\tns / cycle");
+            long vector = cycle(new VectorEval()), pattern = cycle(new PatternEval());
+            if (round == WARM_UP) {
+                System.out.printf("vector\t%.0f%n", (double) vector / POSITIONS / ROUNDS);
+                System.out.printf("pattern\t%.0f%n", (double) pattern / POSITIONS / ROUNDS);
+            }
+        }
+
+        // Search
+        search(new VectorEval(), depth);                                        // Warm up
+        search(new PatternEval(), depth);
+        System.out.println("eval\ttime (ms)\tnodes\tknps");
+        System.out.println("vector\t" + search(new VectorEval(), depth));
+        System.out.println("pattern\t" + search(new PatternEval(), depth));
+
+    }
+
+    /* Play random positions around the centre, and time making, evaluating
+     * and undoing each listed move in them - returns nanoseconds
+     */
+    private static long cycle(EvalState eval) {
+        Random rng = new Random(1);
+        EvalState.MoveList ml = new EvalState.MoveList(), reply = new EvalState.MoveList();
+        long time = 0;
+        for (int n = 0; n < POSITIONS; n++) {
+            int player = GameRules.BLACK;
+            for (int i = 0; i < STONES; i++) {
+                int x, y;
+                do {
+                    x = 5 + rng.nextInt(9);
+                    y = 5 + rng.nextInt(9);
+                } while (!eval.isEmpty(x, y));
+                eval.move(x, y, player);
+                player = -player;
+            }
+            long st = System.nanoTime();
+            for (int r = 0; r < ROUNDS; r++) {
+                eval.listMoves(ml);
+                int m = ml.move(r % ml.size());
+                eval.move(m / 19, m % 19, player);
+                eval.evaluate();
+                eval.listMoves(reply);
+                eval.undo();
+            }
+            time += System.nanoTime() - st;
+            for (int i = 0; i < STONES; i++)
+                eval.undo();
+        }
+        return time;
+    }
+
+    /* Fixed-depth search of the SMPBench position with one thread */
+    private static String search(EvalState eval, int depth) {
+        ABEvalAI ai = new ABEvalAI(AlphaBetaAI.TT_MB, eval);
+        ai.setThreads(1);
+        int player = GameRules.BLACK;
+        for (int[] m : SMPBench.POSITION) {
+            ai.play(m[0], m[1], player);
+            player = -player;
+        }
+        long st = System.nanoTime();
+        long nodes = ai.searchDepth(depth);
+        double ms = (System.nanoTime() - st) / 1e6;
+        return String.format("%.0f\t%d\t%.0f", ms, nodes, nodes / ms);
+    }
+
+}
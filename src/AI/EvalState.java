@@ -5,9 +5,6 @@
 
 package AI;
 
-import java.awt.Point;
-import java.util.LinkedList;
-
 /**
  *
  * @author samuel
@@ -17,8 +14,8 @@ abstract class EvalState {
     /* Produce a global evaluation of the game state */
     abstract double evaluate();
 
-    /* Produce PQ of moves ordered by value */
-    abstract LinkedList<Move> listMoves();
+    /* Fill the given list with the moves to expand, best first */
+    abstract void listMoves(MoveList list);
 
     /* Modify state by adding a move */
     abstract void move(int x, int y, int player);
@@ -26,17 +23,79 @@ abstract class EvalState {
     /* Modify state by undoing a move */
     abstract void undo();
 
-    /* A point, value pair */
-    protected static class Move implements Comparable<Move> {
-        public Point p;
-        public double value;
-        public Move(Point p, double value) {
-            this.p = p;
-            this.value = value;
+    /* Produce the Zobrist key of the current position */
+    abstract long hash();
+
+    /* Checks if the given point is empty */
+    abstract boolean isEmpty(int x, int y);
+
+    /* Produce an independent copy of the state */
+    abstract EvalState copy();
+
+    /* A list of (point, value) pairs, points packed as x * 19 + y. Backed by
+     * arrays that can take a move at either end, so that a list can be
+     * refilled at every node without allocating
+     */
+    protected static class MoveList {
+
+        private static final int CAPACITY = 19 * 19 + 1;
+
+        private final int[] moves = new int[2 * CAPACITY];
+        private final double[] values = new double[2 * CAPACITY];
+        private int head = CAPACITY, tail = CAPACITY;
+
+        public void clear() {
+            head = tail = CAPACITY;
         }
-        public int compareTo(Move m) {
-            return new Double(value).compareTo(new Double(m.value));
+
+        public int size() {
+            return tail - head;
+        }
+
+        public void addFirst(int move, double value) {
+            head--;
+            moves[head] = move;
+            values[head] = value;
         }
+
+        public void addLast(int move, double value) {
+            moves[tail] = move;
+            values[tail] = value;
+            tail++;
+        }
+
+        public int move(int i) {
+            return moves[head + i];
+        }
+
+        public int x(int i) {
+            return moves[head + i] / 19;
+        }
+
+        public int y(int i) {
+            return moves[head + i] % 19;
+        }
+
+        public double value(int i) {
+            return values[head + i];
+        }
+
+        /* Index of the given move, or -1 if not listed */
+        public int indexOf(int move) {
+            for (int i = head; i < tail; i++)
+                if (moves[i] == move)
+                    return i - head;
+            return -1;
+        }
+
+        /* Make this list a copy of the given one */
+        public void copy(MoveList list) {
+            head = list.head;
+            tail = list.tail;
+            System.arraycopy(list.moves, head, moves, head, tail - head);
+            System.arraycopy(list.values, head, values, head, tail - head);
+        }
+
     }
 
 }
@@ -0,0 +1,269 @@
+/*
+ * HotPathBench: Throughput and allocation of the engine's hot paths on a
+ * fixed corpus of opening, middle-game and tactical positions - VectorEval's
+ * move / undo, evaluate and listMoves, AlphaBetaAI.evalBoard and hash2D,
+ * GameRules' move and win check, and the node rate of ABEvalAI's search at a
+ * fixed depth. Each benchmark is run for a few untimed warm-up iterations,
+ * then for several timed ones; results are given as the mean over the timed
+ * iterations with their standard deviation, and bytes allocated per
+ * operation as counted by the JVM for the benchmark thread.
+ * Usage: HotPathBench [iterations] [ms per iteration] [depth]
+ */
+
+package AI;
+
+import Main.BitBoard;
+import Main.GameRules;
+import java.lang.management.ManagementFactory;
+
+/**
+ *
+ * @author samuel
+ */
+public class HotPathBench {
+
+    private static final int WARM_UP = 3;                                       // Untimed iterations
+    private static final int BATCH = 64;                                        // Operations between clock reads
+
+    // Moves from the start, black first
+    static final String[] CLASSES = {"opening", "middle", "tactical"};
+    static final int[][][][] CORPUS = {
+        {
+            {{9, 9}},
+            {{9, 9}, {10, 10}},
+            {{9, 9}, {10, 10}, {9, 10}},
+            {{9, 9}, {8, 10}, {10, 10}, {10, 8}}
+        }, {
+            SMPBench.POSITION,
+            SearchBench.SUITE[1],
+            SearchBench.SUITE[2],
+            SearchBench.SUITE[5],
+            SearchBench.SUITE[7]
+        }, {
+            {{9, 7}, {3, 3}, {9, 8}, {15, 15}, {9, 9}},                         // Open three to stop
+            {{9, 9}, {5, 5}, {9, 10}, {5, 6}, {9, 11}, {5, 7}, {10, 10}, {5, 8}, {11, 11}},
+            SearchBench.SUITE[3],
+            SearchBench.SUITE[4],
+            SearchBench.SUITE[6]
+        }
+    };
+
+    private static final com.sun.management.ThreadMXBean MX
+        = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static volatile long sink;                                          // Keeps results alive
+
+    /* A benchmark: set up on a position, then repeat an operation on it */
+    private abstract static class Bench {
+
+        final String name;
+
+        Bench(String name) {
+            this.name = name;
+        }
+
+        abstract void setUp(int[][] position);
+
+        /* One operation, the i-th on the position - returns anything that
+         * depends on its work
+         */
+        abstract long op(int i);
+
+    }
+
+    public static void main(String[] args) {
+
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        long ms = args.length > 1 ? Long.parseLong(args[1]) : 500;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+
+        Bench[] benches = {
+            new Bench("VectorEval.move+undo") {
+                VectorEval ve;
+                int[] moves;
+                void setUp(int[][] position) {
+                    ve = vectorEval(position);
+                    moves = listed(ve);
+                }
+                long op(int i) {
+                    int m = moves[i % moves.length];
+                    ve.move(m / 19, m % 19, i % 2 == 0 ? GameRules.BLACK : GameRules.WHITE);
+                    long hash = ve.hash();
+                    ve.undo();
+                    return hash;
+                }
+            },
+            new Bench("VectorEval.evaluate") {
+                VectorEval ve;
+                void setUp(int[][] position) {
+                    ve = vectorEval(position);
+                }
+                long op(int i) {
+                    return (long) ve.evaluate();
+                }
+            },
+            new Bench("VectorEval.move+listMoves+undo") {
+                VectorEval ve;
+                int[] moves;
+                final EvalState.MoveList ml = new EvalState.MoveList();
+                void setUp(int[][] position) {
+                    ve = vectorEval(position);
+                    moves = listed(ve);
+                }
+                long op(int i) {
+                    int m = moves[i % moves.length];
+                    ve.move(m / 19, m % 19, i % 2 == 0 ? GameRules.BLACK : GameRules.WHITE);
+                    ve.listMoves(ml);
+                    ve.undo();
+                    return ml.size();
+                }
+            },
+            new Bench("AlphaBetaAI.evalBoard") {
+                final AlphaBetaAI ai = new AlphaBetaAI(1);
+                BitBoard board;
+                int box;
+                void setUp(int[][] position) {
+                    board = new BitBoard();
+                    box = NodePool.box(position[0][0], position[0][1], position[0][0], position[0][1]);
+                    for (int k = 0; k < position.length; k++) {
+                        board.set(position[k][0], position[k][1], k % 2 == 0 ? GameRules.BLACK : GameRules.WHITE);
+                        box = NodePool.stretch(box, position[k][0], position[k][1]);
+                    }
+                }
+                long op(int i) {
+                    return (long) ai.evalBoard(board, box);
+                }
+            },
+            new Bench("AlphaBetaAI.hash2D") {
+                BitBoard board;
+                void setUp(int[][] position) {
+                    board = new BitBoard();
+                    for (int k = 0; k < position.length; k++)
+                        board.set(position[k][0], position[k][1], k % 2 == 0 ? GameRules.BLACK : GameRules.WHITE);
+                }
+                long op(int i) {
+                    return AlphaBetaAI.hash2D(board);
+                }
+            },
+            new Bench("GameRules.play (whole position)") {
+                int[][] position;
+                void setUp(int[][] position) {
+                    this.position = position;
+                }
+                long op(int i) {
+                    GameRules game = new GameRules();
+                    int winner = 0;
+                    for (int k = 0; k < position.length; k++)
+                        winner |= game.play(position[k][0], position[k][1], k % 2 == 0 ? GameRules.BLACK : GameRules.WHITE);
+                    return winner;
+                }
+            }
+        };
+
+        System.out.printf("%d warm-up and %d timed iterations of %d ms per position class%n", WARM_UP, iterations, ms);
+        System.out.println("benchmark\tpositions\tops / us\t+-\tB / op");
+        for (Bench bench : benches)
+            for (int c = 0; c < CORPUS.length; c++) {
+                double[] rate = new double[iterations];
+                double bytes = 0;
+                for (int it = -WARM_UP; it < iterations; it++) {
+                    long ops = 0, time = 0, allocated = 0;
+                    for (int[][] position : CORPUS[c]) {
+                        bench.setUp(position);
+                        long[] r = run(bench, ms * 1000000 / CORPUS[c].length);
+                        ops += r[0];
+                        time += r[1];
+                        allocated += r[2];
+                    }
+                    if (it >= 0) {
+                        rate[it] = ops * 1000.0 / time;
+                        bytes += (double) allocated / ops / iterations;
+                    }
+                }
+                System.out.printf("%s\t%s\t%.3f\t%.3f\t%.1f%n", bench.name, CLASSES[c], mean(rate), deviation(rate), bytes);
+            }
+
+        // Search: nodes per second, with a new AI (and table) for every run
+        System.out.println("benchmark\tpositions\tknps\t+-\tB / node\tnodes");
+        for (int c = 0; c < CORPUS.length; c++) {
+            double[] rate = new double[iterations];
+            double bytes = 0;
+            long nodes = 0;
+            for (int it = -WARM_UP; it < iterations; it++) {
+                long n = 0, time = 0, allocated = 0;
+                for (int[][] position : CORPUS[c]) {
+                    ABEvalAI ai = new ABEvalAI(8);
+                    ai.setThreads(1);
+                    int player = GameRules.BLACK;
+                    for (int[] m : position) {
+                        ai.play(m[0], m[1], player);
+                        player = -player;
+                    }
+                    long a = MX.getThreadAllocatedBytes(Thread.currentThread().getId()), st = System.nanoTime();
+                    n += ai.searchDepth(depth);
+                    time += System.nanoTime() - st;
+                    allocated += MX.getThreadAllocatedBytes(Thread.currentThread().getId()) - a;
+                }
+                if (it >= 0) {
+                    rate[it] = n * 1e6 / time;
+                    bytes += (double) allocated / n / iterations;
+                    nodes = n;
+                }
+            }
+            System.out.printf("ABEvalAI depth %d\t%s\t%.1f\t%.1f\t%.1f\t%d%n", depth, CLASSES[c], mean(rate), deviation(rate), bytes, nodes);
+        }
+
+    }
+
+    /* Repeat the operation for the given time - returns the number of
+     * operations, the nanoseconds they took and the bytes they allocated
+     */
+    private static long[] run(Bench bench, long nanos) {
+        long id = Thread.currentThread().getId();
+        long ops = 0, result = 0, time = 0;
+        long allocated = MX.getThreadAllocatedBytes(id);
+        while (time < nanos) {
+            long st = System.nanoTime();
+            for (int i = 0; i < BATCH; i++)
+                result += bench.op((int) ops + i);
+            time += System.nanoTime() - st;
+            ops += BATCH;
+        }
+        allocated = MX.getThreadAllocatedBytes(id) - allocated;
+        sink += result;
+        return new long[] {ops, time, allocated};
+    }
+
+    /* Evaluation of a position */
+    private static VectorEval vectorEval(int[][] position) {
+        VectorEval ve = new VectorEval();
+        for (int k = 0; k < position.length; k++)
+            ve.move(position[k][0], position[k][1], k % 2 == 0 ? GameRules.BLACK : GameRules.WHITE);
+        return ve;
+    }
+
+    /* The moves listed in a position, packed */
+    private static int[] listed(EvalState eval) {
+        EvalState.MoveList ml = new EvalState.MoveList();
+        eval.listMoves(ml);
+        int[] moves = new int[ml.size()];
+        for (int i = 0; i < moves.length; i++)
+            moves[i] = ml.move(i);
+        return moves;
+    }
+
+    private static double mean(double[] x) {
+        double sum = 0;
+        for (double v : x)
+            sum += v;
+        return sum / x.length;
+    }
+
+    private static double deviation(double[] x) {
+        double m = mean(x), sum = 0;
+        for (double v : x)
+            sum += (v - m) * (v - m);
+        return x.length > 1 ? Math.sqrt(sum / (x.length - 1)) : 0;
+    }
+
+}
@@ -0,0 +1,332 @@
+/*
+ * MCTSAI: Monte Carlo tree search. Instead of searching every line to a
+ * fixed depth, the AI plays many games to the end from the current position
+ * and grows a tree towards the moves that win most of them. Moves in the
+ * tree are picked by PUCT: the win rate of a move so far, plus a bonus for
+ * moves seldom tried, weighted by a prior taken from the evaluator's move
+ * list. Games beyond the tree (rollouts) make and answer threats at once
+ * and otherwise pick among the evaluator's best moves at random, in
+ * proportion to their value, so that they look like real games.
+ *
+ * All cores search the one tree (tree parallelism). The tree lives in
+ * arrays that threads update without locks; a thread going down a move
+ * counts it as lost (a virtual loss) until its game is over, which steers
+ * the other threads to other moves meanwhile.
+ */
+
+package AI;
+
+import Main.GameRules;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *
+ * @author samuel
+ */
+public class MCTSAI extends BaseAI {
+
+    protected static final boolean DIAG = Boolean.getBoolean("five.diag");     // -Dfive.diag=true
+
+    // Search limits
+    protected static final long MOVE_TIME = 3000;                               // ms per move
+    protected static final int THREADS = Runtime.getRuntime().availableProcessors();
+    protected static final int CHECK_PLAYOUTS = 0x3F;                           // Clock check interval
+
+    // Tree
+    protected static final int MAX_NODES = 1 << 20;
+    protected static final double EXPLORATION = 1.5;                            // PUCT constant
+    protected static final int VIRTUAL_LOSS = 3;
+    protected static final int EXPAND_VISITS = 2;                               // Before a leaf grows
+    protected static final int MAX_ROLLOUT = 80;                                // Plies, then a draw
+
+    protected static final Random RNG = new Random();
+
+    private static final int NONE = -1;
+    private static final int BUSY = -2;                                         // Being expanded
+
+    private final PatternEval board = new PatternEval();                        // Kept in step with the game
+    private long moveTime = MOVE_TIME;
+    private long playoutLimit = Long.MAX_VALUE;
+    private int threads = THREADS;
+
+    // Tree: the children of a node take a contiguous range of indices, and
+    // node 0 is the root. Results are counted in half points, for the player
+    // who made the move into the node
+    private final int[] move = new int[MAX_NODES];
+    private final float[] prior = new float[MAX_NODES];
+    private final int[] count = new int[MAX_NODES];
+    private final AtomicIntegerArray first = new AtomicIntegerArray(MAX_NODES); // Published last
+    private final AtomicIntegerArray visits = new AtomicIntegerArray(MAX_NODES);
+    private final AtomicIntegerArray points = new AtomicIntegerArray(MAX_NODES);
+    private final AtomicInteger size = new AtomicInteger();
+
+    // Current search
+    private final AtomicLong playouts = new AtomicLong();
+    private volatile boolean stop;
+    private long deadline;
+
+    /* Set the time (ms) and number of playouts the AI may spend on a move */
+    public void setBudget(long moveTime, long playoutLimit) {
+        this.moveTime = moveTime;
+        this.playoutLimit = playoutLimit;
+    }
+
+    /* Set the number of threads to search with */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /* Update internal state through opponent's move */
+    public void update() {
+        if (GameRules.inBoard(lastX, lastY) && board.isEmpty(lastX, lastY))
+            board.move(lastX, lastY, -player);
+        if (DIAG) {
+            System.out.println();
+            System.out.println((player == GameRules.WHITE ? "Black: " : "White: ") + lastX + "," + lastY);
+        }
+    }
+
+    /* Update internal state through own move */
+    public void update(int x, int y) {
+        board.move(x, y, player);
+    }
+
+    /* Update internal state by taking back the last stone */
+    public void undo(int x, int y) {
+        board.undo();
+    }
+
+    /* Produce next move: search from a new tree until the budget runs out,
+     * then play the move tried most
+     */
+    public int getMove() {
+
+        long st = System.currentTimeMillis();
+        size.set(1);
+        first.set(0, NONE);
+        visits.set(0, 0);
+        points.set(0, 0);
+        playouts.set(0);
+        stop = false;
+        deadline = st + moveTime;
+
+        Worker[] workers = new Worker[threads];
+        Thread[] helperThreads = new Thread[threads - 1];
+        for (int i = 0; i < threads; i++)
+            workers[i] = new Worker(board.copy());
+        workers[0].expand(0);
+        for (int i = 1; i < threads; i++) {
+            helperThreads[i - 1] = new Thread(workers[i]);
+            helperThreads[i - 1].start();
+        }
+        workers[0].run();
+        for (Thread t : helperThreads)
+            try {
+                t.join();
+            } catch (InterruptedException e) {}
+
+        // Most visited move, the one most confidently good
+        int best = NONE;
+        for (int c = first.get(0), end = c + count[0]; c < end && c >= 0; c++)
+            if (best == NONE || visits.get(c) > visits.get(best))
+                best = c;
+        if (best == NONE)                                                       // Board full
+            return NONE;
+
+        if (DIAG) {
+            System.out.println("Playouts: " + playouts.get() + " (" + size.get() + " nodes, " + threads
+                               + " threads, " + (System.currentTimeMillis() - st) + " ms)");
+            System.out.println((player == GameRules.WHITE ? "White: " : "Black: ") + move[best] / 19 + "," + move[best] % 19
+                               + " (" + points.get(best) / 2.0 / Math.max(1, visits.get(best)) + ")");
+        }
+        return move[best];
+
+    }
+
+    /* Points for the given player from a game's winner (0 for a draw) */
+    private static int points(int winner, int player) {
+        return winner == 0 ? 1 : winner == player ? 2 : 0;
+    }
+
+    /* A search thread, with its own copy of the position */
+    private class Worker implements Runnable {
+
+        final PatternEval eval;
+        final Random rng = new Random(RNG.nextLong());                          // Uncontended
+        final EvalState.MoveList list = new EvalState.MoveList();
+        final int[] threats = new int[19 * 19];
+        final int[] path = new int[19 * 19 + 1];
+
+        Worker(PatternEval eval) {
+            this.eval = eval;
+        }
+
+        /* Play games until stopped */
+        public void run() {
+            while (!stop) {
+                playout();
+                long n = playouts.incrementAndGet();
+                if (n >= playoutLimit || (n & CHECK_PLAYOUTS) == 0 && System.currentTimeMillis() >= deadline)
+                    stop = true;
+            }
+        }
+
+        /* One game: down the tree, growing it by a node's children where the
+         * game leaves it, on to the end, and back up with the result
+         */
+        void playout() {
+
+            // Selection, with a virtual loss on every move taken
+            int node = 0, player = MCTSAI.this.player, length = 0, winner = 0;
+            boolean over = false;
+            path[length++] = 0;
+            while (true) {
+                int c = first.get(node);
+                if (c < 0)
+                    break;
+                if (count[node] == 0) {                                         // Board full - draw
+                    over = true;
+                    break;
+                }
+                c = select(node, c);
+                visits.addAndGet(c, VIRTUAL_LOSS);
+                eval.move(move[c] / 19, move[c] % 19, player);
+                path[length++] = c;
+                node = c;
+                if (Double.isInfinite(eval.evaluate())) {                       // Five
+                    winner = player;
+                    over = true;
+                    break;
+                }
+                player = -player;
+            }
+
+            // Expansion and rollout
+            if (!over) {
+                if (visits.get(node) - (node == 0 ? 0 : VIRTUAL_LOSS) >= EXPAND_VISITS)
+                    expand(node);
+                winner = rollout(player);
+            }
+            for (int i = 1; i < length; i++)
+                eval.undo();
+
+            // Backpropagation, taking the virtual losses back
+            for (int i = 0, mover = -MCTSAI.this.player; i < length; i++, mover = -mover) {
+                visits.addAndGet(path[i], i == 0 ? 1 : 1 - VIRTUAL_LOSS);
+                points.addAndGet(path[i], points(winner, mover));
+            }
+
+        }
+
+        /* PUCT: the child with the best win rate plus prior-weighted bonus */
+        int select(int node, int c) {
+            double root = Math.sqrt(Math.max(1, visits.get(node)));
+            int best = c;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int end = c + count[node]; c < end; c++) {
+                int n = visits.get(c);
+                double q = n == 0 ? 0.5 : points.get(c) / 2.0 / n;
+                double value = q + EXPLORATION * prior[c] * root / (1 + n);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = c;
+                }
+            }
+            return best;
+        }
+
+        /* Give a node its children, from the evaluator's move list, unless
+         * another thread is at it or the tree is full. Priors are in
+         * proportion to the values of the moves; a five or the block of one
+         * leaves no other move
+         */
+        void expand(int node) {
+
+            if (!first.compareAndSet(node, NONE, BUSY))
+                return;
+            eval.listMoves(list);
+            int n = list.size();
+            if (n > 0 && Double.isInfinite(list.value(0)))
+                for (n = 1; n < list.size() && Double.isInfinite(list.value(n)); n++);
+            double total = 0;
+            for (int i = 0; i < n; i++)
+                total += value(i);
+
+            int c = size.get() + n > MAX_NODES ? MAX_NODES : size.getAndAdd(n);
+            if (c + n > MAX_NODES) {
+                first.set(node, NONE);
+                return;
+            }
+            for (int i = 0; i < n; i++) {
+                move[c + i] = list.move(i);
+                prior[c + i] = (float) (total > 0 ? value(i) / total : 1.0 / n);
+                first.set(c + i, NONE);
+                visits.set(c + i, 0);
+                points.set(c + i, 0);
+            }
+            count[node] = n;
+            first.set(node, c);
+
+        }
+
+        /* Value of a listed move for its prior, counting a forced one as 1 */
+        double value(int i) {
+            return Double.isInfinite(list.value(i)) ? 1 : list.value(i);
+        }
+
+        /* Play the game out from the current position, player to move, and
+         * take it back - returns the winner, or 0 for a draw
+         */
+        int rollout(int player) {
+
+            int made = 0, winner = 0;
+            for (; made < MAX_ROLLOUT; made++) {
+
+                // Five, or a four to block (two can't be), or an open four
+                if (eval.threats(player, PatternEval.FIVE, PatternEval.FIVE, threats, 0) > 0) {
+                    winner = player;
+                    break;
+                }
+                int n = eval.threats(-player, PatternEval.FIVE, PatternEval.FIVE, threats, 0), p;
+                if (n > 1) {
+                    winner = -player;
+                    break;
+                }
+                if (n == 1)
+                    p = threats[0];
+                else if (eval.threats(player, PatternEval.OPEN_FOUR, PatternEval.OPEN_FOUR, threats, 0) > 0) {
+                    winner = player;
+                    break;
+
+                // Otherwise one of the best moves, in proportion to value
+                } else {
+                    eval.listMoves(list);
+                    if (list.size() == 0)
+                        break;
+                    double total = 0;
+                    for (int i = 0; i < list.size(); i++)
+                        total += list.value(i);
+                    double r = rng.nextDouble() * total;
+                    int i = 0;
+                    while (i < list.size() - 1 && (r -= list.value(i)) > 0)
+                        i++;
+                    p = list.move(i);
+                }
+
+                eval.move(p / 19, p % 19, player);
+                player = -player;
+
+            }
+
+            for (int i = 0; i < made; i++)
+                eval.undo();
+            return winner;
+
+        }
+
+    }
+
+}
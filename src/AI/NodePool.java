@@ -0,0 +1,214 @@
+/*
+ * NodePool: Arena holding a game tree as parallel primitive arrays. A node is
+ * an index into the arrays; the children of a node take a contiguous range of
+ * indices, allocated all at once when the node is expanded. Nothing is freed
+ * individually: between moves the pool is either reset or compacted down to
+ * the subtree still in use, into a second set of arrays that is swapped in.
+ */
+
+package AI;
+
+import java.util.Arrays;
+
+/**
+ *
+ * @author samuel
+ */
+class NodePool {
+
+    static final int NONE = -1;
+
+    private static final int CAPACITY = 1 << 16;
+
+    // Node fields, by index
+    short[] move;                   // Packed point, as TranspositionTable.move
+    double[] alpha, beta;
+    int[] first;                    // First child, or NONE if not expanded
+    short[] count;                  // Number of children
+    int[] box;                      // Bounding box of stones, packed by box()
+
+    private int size = 0;
+    private NodePool spare;         // Arrays to compact into
+
+    public NodePool() {
+        move = new short[CAPACITY];
+        alpha = new double[CAPACITY];
+        beta = new double[CAPACITY];
+        first = new int[CAPACITY];
+        count = new short[CAPACITY];
+        box = new int[CAPACITY];
+    }
+
+    /* Number of nodes in use */
+    public int size() {
+        return size;
+    }
+
+    /* Drop all nodes */
+    public void reset() {
+        size = 0;
+    }
+
+    /* Create a parentless node */
+    public int root(int x, int y, int box) {
+        int n = allocate(1);
+        init(n, x, y, box);
+        return n;
+    }
+
+    /* Create the given number of children of a node, initially without moves
+     * - returns the first one
+     */
+    public int expand(int node, int n) {
+        int c = allocate(n);
+        first[node] = c;
+        count[node] = (short)n;
+        return c;
+    }
+
+    /* Set a child's move, its box being its parent's stretched by the move */
+    public void setMove(int parent, int child, int x, int y) {
+        init(child, x, y, stretch(box[parent], x, y));
+    }
+
+    /* Find the child of a node playing the given move */
+    public int child(int node, int x, int y) {
+        short m = (short)TranspositionTable.move(x, y);
+        for (int c = first[node], end = c + count[node]; c < end; c++)
+            if (move[c] == m)
+                return c;
+        return NONE;
+    }
+
+    /* Add a child to a node - returns the new child */
+    public int addChild(int node, int x, int y) {
+        int c = grow(node, 1);
+        setMove(node, c, x, y);
+        return c;
+    }
+
+    /* Add n children to a node, moving its children to a block that much
+     * larger at the end of the pool - returns the first new child, whose
+     * moves are still to be set
+     */
+    public int grow(int node, int n) {
+        int k = first[node] == NONE ? 0 : count[node], c = allocate(k + n), old = first[node];
+        for (int i = 0; i < k; i++)
+            copy(old + i, c + i, this);
+        first[node] = c;
+        count[node] = (short)(k + n);
+        return c + k;
+    }
+
+    /* Keep only the subtree of the given node - returns its new index */
+    public int compact(int node) {
+        if (spare == null)
+            spare = new NodePool();
+
+        // Copy breadth first, so that sibling ranges stay contiguous
+        NodePool dst = spare;
+        dst.reset();
+        dst.copy(node, dst.allocate(1), this);
+        for (int n = 0; n < dst.size; n++) {
+            int c = dst.first[n], k = dst.count[n];
+            if (c == NONE)
+                continue;
+            int nc = dst.allocate(k);
+            for (int i = 0; i < k; i++)
+                dst.copy(c + i, nc + i, this);
+            dst.first[n] = nc;
+        }
+
+        // Make the copy current, keeping the old arrays as the spare
+        short[] m = move; move = dst.move; dst.move = m;
+        double[] a = alpha; alpha = dst.alpha; dst.alpha = a;
+        double[] b = beta; beta = dst.beta; dst.beta = b;
+        int[] f = first; first = dst.first; dst.first = f;
+        short[] k = count; count = dst.count; dst.count = k;
+        int[] x = box; box = dst.box; dst.box = x;
+        size = dst.size;
+        dst.reset();
+        return 0;
+    }
+
+    private void copy(int from, int to, NodePool src) {
+        move[to] = src.move[from];
+        alpha[to] = src.alpha[from];
+        beta[to] = src.beta[from];
+        first[to] = src.first[from];
+        count[to] = src.count[from];
+        box[to] = src.box[from];
+    }
+
+    private void init(int n, int x, int y, int box) {
+        move[n] = (short)TranspositionTable.move(x, y);
+        alpha[n] = Double.NEGATIVE_INFINITY;
+        beta[n] = Double.POSITIVE_INFINITY;
+        first[n] = NONE;
+        count[n] = 0;
+        this.box[n] = box;
+    }
+
+    /* Take n consecutive indices, growing the arrays if needed */
+    private int allocate(int n) {
+        if (size + n > move.length) {
+            int capacity = move.length;
+            while (size + n > capacity)
+                capacity *= 2;
+            move = Arrays.copyOf(move, capacity);
+            alpha = Arrays.copyOf(alpha, capacity);
+            beta = Arrays.copyOf(beta, capacity);
+            first = Arrays.copyOf(first, capacity);
+            count = Arrays.copyOf(count, capacity);
+            box = Arrays.copyOf(box, capacity);
+        }
+        int n0 = size;
+        size += n;
+        return n0;
+    }
+
+    /* Move accessors */
+    public int x(int node) {
+        return move[node] / 19;
+    }
+
+    public int y(int node) {
+        return move[node] % 19;
+    }
+
+    /* Bounding box packing: upper left and lower right corners, a byte each */
+    static int box(int ulx, int uly, int lrx, int lry) {
+        return ulx | uly << 8 | lrx << 16 | lry << 24;
+    }
+
+    static int ulx(int box) {
+        return box & 0xFF;
+    }
+
+    static int uly(int box) {
+        return box >>> 8 & 0xFF;
+    }
+
+    static int lrx(int box) {
+        return box >>> 16 & 0xFF;
+    }
+
+    static int lry(int box) {
+        return box >>> 24;
+    }
+
+    /* Stretch a box to contain the given point, as StupidAI.stretch */
+    static int stretch(int box, int x, int y) {
+        int ulx = ulx(box), uly = uly(box), lrx = lrx(box), lry = lry(box);
+        if (x < ulx)
+            ulx = x;
+        else if (x > lrx)
+            lrx = x;
+        if (y < uly)
+            uly = y;
+        else if (y > lry)
+            lry = y;
+        return box(ulx, uly, lrx, lry);
+    }
+
+}
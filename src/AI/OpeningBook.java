@@ -0,0 +1,154 @@
+/*
+ * OpeningBook: Moves to play in known early positions, each with a weight,
+ * read from a file built by BookBuilder. A position and its seven images
+ * under the symmetries of the board (rotations and reflections) are one
+ * entry: the key is the least of the eight Zobrist keys, and moves are
+ * stored as seen in that image. The file is a header and then entries of
+ * 16 bytes - key, move, weight - sorted by key and move, and is memory
+ * mapped rather than read, so that opening even a large book costs nothing
+ * and a lookup is a binary search touching a few pages.
+ */
+
+package AI;
+
+import Main.BitBoard;
+import Main.GameRules;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**
+ *
+ * @author samuel
+ */
+public class OpeningBook {
+
+    public static final int NONE = -1;
+    public static final String FILE = "five.book";                              // Looked for by standard()
+
+    static final int MAGIC = 0x46424B31;                                        // "FBK1"
+    static final int HEADER = 16;                                               // Magic, entries (long), spare
+    static final int ENTRY = 16;                                                // Key, move, weight
+
+    private static OpeningBook standard;
+    private static boolean looked;
+
+    private final ByteBuffer buffer;
+    private final int size;
+
+    /* Map the book in the given file */
+    public OpeningBook(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            MappedByteBuffer map = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            if (raf.length() < HEADER || map.getInt(0) != MAGIC)
+                throw new IOException(file + " is not an opening book");
+            long entries = map.getLong(4);
+            if (entries > (raf.length() - HEADER) / ENTRY)
+                throw new IOException(file + " is truncated");
+            buffer = map;
+            size = (int) entries;
+        } finally {
+            raf.close();                                                        // The mapping stays valid
+        }
+    }
+
+    /* The book in FILE in the working directory, mapped once, or null if
+     * there is none
+     */
+    public static synchronized OpeningBook standard() {
+        if (!looked) {
+            looked = true;
+            File file = new File(FILE);
+            try {
+                if (file.isFile())
+                    standard = new OpeningBook(file);
+            } catch (IOException e) {
+                System.err.println("Opening book not used: " + e.getMessage());
+            }
+        }
+        return standard;
+    }
+
+    /* Size of the file (bytes), all of it mapped */
+    public long bytes() {
+        return buffer.capacity();
+    }
+
+    /* Number of entries (position and move pairs) */
+    public int size() {
+        return size;
+    }
+
+    /* Canonical key of a position: the least key of its eight images, as
+     * Symmetry keeps it in the search but at any number of stones - returns
+     * it, and leaves the symmetry giving it in symmetry[0]
+     */
+    static long canonical(BitBoard board, int[] symmetry) {
+        long[] keys = new long[Symmetry.COUNT];
+        for (int x = 0; x < 19; x++)
+            for (int y = 0; y < 19; y++)
+                if (!board.isEmpty(x, y)) {
+                    int player = board.get(x, y), p = x * 19 + y;
+                    for (int s = 0; s < Symmetry.COUNT; s++) {
+                        int q = Symmetry.transform(p, s);
+                        keys[s] ^= Zobrist.key(player, q / 19, q % 19);
+                    }
+                }
+        int best = 0;
+        for (int s = 1; s < Symmetry.COUNT; s++)
+            if (keys[s] < keys[best])
+                best = s;
+        symmetry[0] = best;
+        return keys[best];
+    }
+
+    /* Pick a book move for the position, at random in proportion to the
+     * weights - returns it, packed, or NONE if the position is not in the
+     * book
+     */
+    public int probe(BitBoard board, Random rng) {
+        int[] symmetry = new int[1];
+        long key = canonical(board, symmetry);
+
+        // First entry of the key, by binary search
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key(mid) < key)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        long total = 0;
+        int end = lo;
+        for (; end < size && key(end) == key; end++)
+            total += weight(end);
+        if (total == 0)
+            return NONE;
+
+        long r = (long) (rng.nextDouble() * total);
+        int i = lo;
+        while (i < end - 1 && (r -= weight(i)) >= 0)
+            i++;
+        int move = Symmetry.inverse(move(i), symmetry[0]);
+        return GameRules.inBoard(move / 19, move % 19) && board.isEmpty(move / 19, move % 19) ? move : NONE;
+    }
+
+    private long key(int i) {
+        return buffer.getLong(HEADER + i * ENTRY);
+    }
+
+    private int move(int i) {
+        return buffer.getInt(HEADER + i * ENTRY + 8);
+    }
+
+    private int weight(int i) {
+        return buffer.getInt(HEADER + i * ENTRY + 12);
+    }
+
+}
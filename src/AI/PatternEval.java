@@ -0,0 +1,384 @@
+/*
+ * PatternEval: Evaluator that reads the shape of each line through an empty
+ * point from lookup tables. Every line of the board is kept as a packed
+ * code, 2 bits per point, so that the 9-point window centred on a point is a
+ * single shift and mask. The window indexes a table of the threat a stone
+ * there would make for each player (five, open four, four, open three, ...),
+ * which sees broken shapes like XX_XX and X_XXX as well as runs.
+ */
+
+package AI;
+
+import Main.BitBoard;
+import Main.GameRules;
+
+/**
+ *
+ * @author samuel
+ */
+class PatternEval extends EvalState {
+
+    // Threat classes, by the shape a stone at the centre of a window makes
+    static final int NONE = 0;
+    static final int ONE = 1;
+    static final int TWO = 2;
+    static final int OPEN_TWO = 3;
+    static final int THREE = 4;
+    static final int OPEN_THREE = 5;
+    static final int FOUR = 6;
+    static final int OPEN_FOUR = 7;
+    static final int FIVE = 8;
+
+    // Scores of a point for a player, from its threats in all directions
+    private static final int[] VALUE = {0, 1, 4, 16, 20, 100, 120, 1 << 16, 1 << 20};
+    private static final int DOUBLE_THREE = 1 << 13;
+    private static final int WIN = 1 << 16;                                     // Open four, four-three...
+    private static final double SCALE = 1.0 / 1024;
+
+    // Score by the threats in all four directions, as a base 9 number
+    private static final int[] COMBO_STEP = {1, 9, 81, 729};
+    private static final int[] SCORE = new int[9 * 9 * 9 * 9];
+
+    // Move listing
+    private static final int MOVE_LIM = 8;
+    private static final int MOVE_RATIO = 16;                                   // Drop moves worth 1/16 of best
+
+    // Line codes: 2 bits per point, padded with border points at both ends
+    private static final int SIZE = 19;
+    private static final int POINTS = SIZE * SIZE;
+    private static final int HALF = 4;                                          // Window points either side
+    private static final int PADDED = SIZE + 2 * HALF;
+    private static final int LINES = SIZE + SIZE + 2 * (2 * SIZE - 1);
+    private static final int WINDOW = (1 << 2 * (2 * HALF + 1)) - 1;
+    private static final int EMPTY = 0, BLACK = 1, WHITE = 2, BORDER = 3;
+
+    // Line and position in line, by point and direction
+    private static final int[] LINE = new int[POINTS * 4];
+    private static final int[] POS = new int[POINTS * 4];
+    private static final int[] POINT = new int[LINES * PADDED];                 // Inverse, -1 if off board
+    private static final long[] EMPTY_LINES = new long[LINES];
+
+    // Threats of both sides (black in the low 4 bits) by the code of the 8
+    // points around the centre of a window - 64 kB, so that it stays in cache
+    private static final byte[] THREAT = new byte[1 << 16];
+
+    static {
+        java.util.Arrays.fill(POINT, -1);
+        java.util.Arrays.fill(EMPTY_LINES, (1L << 2 * PADDED) - 1);
+        for (int x = 0; x < SIZE; x++)
+            for (int y = 0; y < SIZE; y++) {
+                int p = x * SIZE + y;
+                int[] line = {y, SIZE + x, 2 * SIZE + x - y + SIZE - 1, 4 * SIZE - 1 + x + y};
+                int[] pos = {x, y, x, x};
+                for (int dir = 0; dir < 4; dir++) {
+                    LINE[p * 4 + dir] = line[dir];
+                    POS[p * 4 + dir] = pos[dir] + HALF;
+                    POINT[line[dir] * PADDED + pos[dir] + HALF] = p;
+                    EMPTY_LINES[line[dir]] &= ~(3L << 2 * (pos[dir] + HALF));
+                }
+            }
+        for (int i = 0; i < SCORE.length; i++)
+            SCORE[i] = score(new int[] {i % 9, i / 9 % 9, i / 81 % 9, i / 729});
+        byte[] black = new byte[1 << 16], white = new byte[1 << 16];
+        java.util.Arrays.fill(black, (byte) -1);
+        java.util.Arrays.fill(white, (byte) -1);
+        for (int code = 0; code < 1 << 16; code++)
+            THREAT[code] = (byte) (shape(BLACK, code, black) | shape(WHITE, code, white) << 4);
+    }
+
+    // Game state information
+    private long[] lines = EMPTY_LINES.clone();
+    private int[] pastMoves = new int[POINTS];
+    private int[] pastFive = new int[POINTS];
+    private int moveCount = 0;
+    private BitBoard stones = new BitBoard();
+    private long hash = 0;          // Zobrist key, kept up to date by move/undo
+    private int firstFive = -1;     // Move that made the first five, if any
+
+    // Threat by side, point and direction, the same as an index into SCORE,
+    // score by side and point, and the total score of each side. Empty
+    // points with a score are the candidates
+    private byte[] threat = new byte[2 * POINTS * 4];
+    private int[] combo = new int[2 * POINTS];
+    private int[] score = new int[2 * POINTS];
+    private long[] total = new long[2];
+    private long[] candidates = new long[(POINTS + 63) / 64];
+
+    // Utility variables
+    private boolean utd = false;    // Track whether move list is up to date or not
+    private MoveList moves = new MoveList();
+    private int[] topMove = new int[MOVE_LIM];
+    private int[] topValue = new int[MOVE_LIM];
+
+    /* Produce an independent copy of the state, by replaying the moves */
+    public PatternEval copy() {
+        PatternEval pe = new PatternEval();
+        for (int i = 0; i < moveCount; i++) {
+            int p = pastMoves[i];
+            pe.move(p / SIZE, p % SIZE, stones.get(p / SIZE, p % SIZE));
+        }
+        return pe;
+    }
+
+    /* Produce a global evaluation of the game state */
+    public double evaluate() {
+        if (firstFive >= 0)             // Later fives don't count
+            return pastFive[firstFive] * Double.POSITIVE_INFINITY;
+        return (total[0] - total[1]) * SCALE * GameRules.BLACK;
+    }
+
+    /* Produce the Zobrist key of the current position */
+    public long hash() {
+        return hash;
+    }
+
+    /* Produce list of moves to expand */
+    public void listMoves(MoveList list) {
+        if (!utd)
+            update();
+        list.copy(moves);
+    }
+
+    /* Rebuild the move list: the best candidates for either side, best first */
+    private void update() {
+
+        moves.clear();
+        if (moveCount == 0) {
+            moves.addFirst(9 * SIZE + 9, 0);
+            utd = true;
+            return;
+        }
+
+        // Keep the best few, by insertion
+        int n = 0;
+        for (int w = 0; w < candidates.length; w++)
+            for (long bits = candidates[w]; bits != 0; bits &= bits - 1) {
+                int p = w * 64 + Long.numberOfTrailingZeros(bits);
+                int value = score[p] + score[POINTS + p];
+                if (n == MOVE_LIM && value <= topValue[n - 1])
+                    continue;
+                int i = n < MOVE_LIM ? n++ : n - 1;
+                for (; i > 0 && topValue[i - 1] < value; i--) {
+                    topMove[i] = topMove[i - 1];
+                    topValue[i] = topValue[i - 1];
+                }
+                topMove[i] = p;
+                topValue[i] = value;
+            }
+
+        for (int i = 0; i < n && topValue[i] * MOVE_RATIO >= topValue[0]; i++)
+            moves.addLast(topMove[i], topValue[i] >= VALUE[FIVE] ? Double.POSITIVE_INFINITY : topValue[i] * SCALE);
+
+        utd = true;
+
+    }
+
+    /* Modify state by adding a move */
+    public void move(int x, int y, int player) {
+
+        utd = false;
+
+        if (isEmpty(x, y)) {
+
+            int p = x * SIZE + y, side = side(player);
+            pastFive[moveCount] = 0;
+            for (int dir = 0; dir < 4; dir++)
+                if (threat[(side * POINTS + p) * 4 + dir] == FIVE)
+                    pastFive[moveCount] = player;
+            if (firstFive < 0 && pastFive[moveCount] != 0)
+                firstFive = moveCount;
+            pastMoves[moveCount++] = p;
+            stones.set(x, y, player);
+            hash ^= Zobrist.key(player, x, y);
+
+            for (int dir = 0; dir < 4; dir++)
+                lines[LINE[p * 4 + dir]] |= (long) (player == GameRules.BLACK ? BLACK : WHITE) << 2 * POS[p * 4 + dir];
+            refresh(p);
+
+        }
+
+    }
+
+    /* Modify state by undoing a move */
+    public void undo() {
+
+        utd = false;
+        int p = pastMoves[--moveCount], x = p / SIZE, y = p % SIZE;
+        if (firstFive == moveCount)
+            firstFive = -1;
+        hash ^= Zobrist.key(stones.get(x, y), x, y);
+        stones.clear(x, y);
+
+        for (int dir = 0; dir < 4; dir++)
+            lines[LINE[p * 4 + dir]] &= ~(3L << 2 * POS[p * 4 + dir]);
+        refresh(p);
+
+    }
+
+    /* Checks if the given point is empty */
+    public boolean isEmpty(int x, int y) {
+        return GameRules.inBoard(x, y) && stones.isEmpty(x, y);
+    }
+
+    /* Threat class a stone of the given player at (x, y) would make along dir */
+    int threat(int x, int y, int dir, int player) {
+        return threat[(side(player) * POINTS + x * SIZE + y) * 4 + dir];
+    }
+
+    /* Score of a move at point p for the given player */
+    int score(int p, int player) {
+        return score[side(player) * POINTS + p];
+    }
+
+    /* Append to out, from index n, the points where a stone of the given
+     * player makes a threat of at least class min, and at most max, in some
+     * direction - returns the new length
+     */
+    int threats(int player, int min, int max, int[] out, int n) {
+        int side = side(player);
+        for (int w = 0; w < candidates.length; w++)
+            for (long bits = candidates[w]; bits != 0; bits &= bits - 1) {
+                int p = w * 64 + Long.numberOfTrailingZeros(bits), i = (side * POINTS + p) * 4;
+                int best = Math.max(Math.max(threat[i], threat[i + 1]), Math.max(threat[i + 2], threat[i + 3]));
+                if (best >= min && best <= max)
+                    out[n++] = p;
+            }
+        return n;
+    }
+
+    /* Re-read the threats of every point whose window contains p */
+    private void refresh(int p) {
+        for (int dir = 0; dir < 4; dir++) {
+            int line = LINE[p * 4 + dir];
+            for (int pos = POS[p * 4 + dir] - HALF; pos <= POS[p * 4 + dir] + HALF; pos++) {
+                int q = POINT[line * PADDED + pos];
+                if (q < 0)
+                    continue;
+                int code = (int) (lines[line] >>> 2 * (pos - HALF)) & WINDOW;
+                int threats = (code >>> 2 * HALF & 3) == EMPTY ? THREAT[code & 0xFF | code >>> 10 << 8] & 0xFF : 0;
+                for (int side = 0; side < 2; side++) {
+                    int t = threats >>> 4 * side & 0xF;
+                    if (threat[(side * POINTS + q) * 4 + dir] != t)
+                        setThreat(side, q, dir, t);
+                }
+            }
+        }
+    }
+
+    /* Change the threat of a point along dir, and with it the point's score */
+    private void setThreat(int side, int p, int dir, int t) {
+
+        int i = side * POINTS + p;
+        combo[i] += (t - threat[i * 4 + dir]) * COMBO_STEP[dir];
+        threat[i * 4 + dir] = (byte) t;
+
+        int value = SCORE[combo[i]];
+        total[side] += value - score[i];
+        score[i] = value;
+        if (score[p] + score[POINTS + p] > 0)
+            candidates[p >>> 6] |= 1L << p;
+        else
+            candidates[p >>> 6] &= ~(1L << p);
+
+    }
+
+    /* Combine threats in all four directions into the score of a point */
+    private static int score(int[] threats) {
+
+        int fours = 0, threes = 0, sum = 0, best = NONE;
+        for (int t : threats) {
+            if (t == FOUR || t == OPEN_FOUR)
+                fours++;
+            else if (t == OPEN_THREE)
+                threes++;
+            best = Math.max(best, t);
+            sum += VALUE[t];
+        }
+
+        if (best == FIVE)
+            return VALUE[FIVE];
+        else if (best == OPEN_FOUR || fours >= 2 || fours == 1 && threes >= 1)
+            return WIN;
+        else if (threes >= 2)
+            return DOUBLE_THREE;
+        else
+            return sum;
+
+    }
+
+    private static int side(int player) {
+        return player == GameRules.BLACK ? 0 : 1;
+    }
+
+    /* Threat class of the line through the centre of a window, for a stone of
+     * the given colour there - the window is the code of the 8 points around
+     * the centre, 2 bits each. A five needs a run of five through the centre;
+     * a four is one move from five (open if two moves make it), a three one
+     * move from a four, and so on. A stone with none of its own around makes
+     * no threat, so that the threats of points far from any stone are those
+     * of the empty board
+     */
+    private static int shape(int me, int window, byte[] memo) {
+
+        if (memo[window] >= 0)
+            return memo[window];
+
+        // Run through the centre
+        int run = 1;
+        for (int i = HALF - 1; i >= 0 && cell(window, i) == me; i--)
+            run++;
+        for (int i = HALF; i < 2 * HALF && cell(window, i) == me; i++)
+            run++;
+
+        int result;
+        if (run >= 5)
+            result = FIVE;
+        else if (!has(window, me))
+            result = NONE;                                                      // Lone stone - no threat yet
+        else {
+            int wins = 0, best = NONE;
+            for (int i = 0; i < 2 * HALF; i++)
+                if (cell(window, i) == EMPTY) {
+                    int s = shape(me, window | me << 2 * i, memo);
+                    if (s == FIVE)
+                        wins++;
+                    else
+                        best = Math.max(best, s);
+                }
+            if (wins >= 2)
+                result = OPEN_FOUR;
+            else if (wins == 1)
+                result = FOUR;
+            else if (best == OPEN_FOUR)
+                result = OPEN_THREE;
+            else if (best == FOUR)
+                result = THREE;
+            else if (best == OPEN_THREE)
+                result = OPEN_TWO;
+            else if (best == THREE)
+                result = TWO;
+            else if (best >= TWO)
+                result = ONE;
+            else
+                result = NONE;
+        }
+
+        memo[window] = (byte) result;
+        return result;
+
+    }
+
+    /* Check if any of the 8 points around a window's centre holds the colour */
+    private static boolean has(int window, int colour) {
+        for (int i = 0; i < 2 * HALF; i++)
+            if (cell(window, i) == colour)
+                return true;
+        return false;
+    }
+
+    /* Point i of the 8 around a window's centre (0-3 before it, 4-7 after) */
+    private static int cell(int window, int i) {
+        return window >>> 2 * i & 3;
+    }
+
+}
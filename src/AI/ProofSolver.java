@@ -0,0 +1,391 @@
+/*
+ * ProofSolver: Depth-first proof-number search (df-pn) for games decided by
+ * threats. Where ThreatSolver deepens a fixed number of plies at a time,
+ * df-pn always expands the line that needs the fewest positions proven, so
+ * it reaches the long, branching lines of a crowded board that iterative
+ * deepening runs out of nodes on. Proof and disproof numbers are shared
+ * between transpositions through a table of fixed size, which bounds the
+ * memory used whatever the budget. Positions are made and unmade through
+ * the EvalState interface of a PatternEval, which also tells the threats
+ * the attacker may play and the replies the defender must consider.
+ */
+
+package AI;
+
+import Main.GameRules;
+
+/**
+ *
+ * @author samuel
+ */
+class ProofSolver {
+
+    // Results, for the player to move
+    static final int WON = 1;
+    static final int LOST = -1;
+    static final int UNKNOWN = 0;
+
+    private static final int INF = 1 << 30;                                     // Proof number of a decided position
+    private static final int MAX_PLY = 96;
+    private static final int MAX_LENGTH = 0xFF;
+    private static final int MAX_WORK = 0x7FFF;
+    private static final int CHECK_NODES = 0x3F;                                // Clock check interval: nodes are dear
+    private static final long WHITE_KEY = 0xC2B2AE3D27D4EB4FL;                  // Keeps the attackers apart
+
+    private final PatternEval board;
+    private final long[] keys;                                                  // Buckets of two
+    private final long[] numbers;                                               // Phi << 32 | delta
+    private final int[] info;                                                   // Move | length | work
+    private final int mask;
+
+    // Current search. Numbers are kept for the player to move (phi: to
+    // prove a win, delta: to prove a loss), so that both sides of the
+    // and/or tree are handled alike
+    private long nodes, nodeLimit;
+    private long deadline;                                                      // ms, 0 for none
+    private int player, attacker;                                               // To move at the root, and to win
+    private final int[][] moves = new int[MAX_PLY + 1][19 * 19];
+    private final int[] count = new int[MAX_PLY + 1];
+    private int[] line = new int[0];
+    private final EvalState.MoveList replies = new EvalState.MoveList();
+    private boolean threatened;                                                 // Replies are forced
+
+    /* Create with a table of 2^bits entries */
+    public ProofSolver(int bits) {
+        board = new PatternEval();
+        keys = new long[1 << bits];
+        numbers = new long[1 << bits];
+        info = new int[1 << bits];
+        mask = (1 << bits) - 2;
+    }
+
+    /* Memory (bytes) of the table of a solver created with the given bits */
+    static long bytes(int bits) {
+        return (8L + 8 + 4) << bits;
+    }
+
+    /* Modify position by adding a move */
+    public void move(int x, int y, int player) {
+        board.move(x, y, player);
+    }
+
+    /* Modify position by undoing a move */
+    public void undo() {
+        board.undo();
+    }
+
+    /* Number of nodes searched by the last solve */
+    public long nodes() {
+        return nodes;
+    }
+
+    /* Decide the position for the given player, to move, within nodeLimit
+     * nodes and until the deadline (ms, 0 for none): WON if a sequence of
+     * threats wins whatever the replies, LOST if the opponent threatens and
+     * every defence is proven to lose, and UNKNOWN otherwise, including when
+     * neither side can make a threat or the time runs out
+     */
+    public int solve(int player, long nodeLimit, long deadline) {
+
+        this.player = player;
+        this.deadline = deadline;
+        line = new int[0];
+        replies.clear();
+        threatened = false;
+
+        // Nothing to prove before either side can make a threat
+        if (board.threats(player, PatternEval.OPEN_THREE, PatternEval.FIVE, moves[0], 0) == 0
+            && board.threats(-player, PatternEval.OPEN_THREE, PatternEval.FIVE, moves[0], 0) == 0)
+            return UNKNOWN;
+
+        // A win of our own, with half of the budget
+        boolean won = prove(player, true, nodeLimit / 2);
+        long total = nodes;
+        if (won) {
+            line = follow();
+            nodes = total;
+            return WON;
+        }
+
+        // Otherwise every defence against the opponent's threats, if any
+        boolean lost = prove(-player, false, nodeLimit - total);
+        total += nodes;
+        threatened = count[0] > 0;
+        if (lost)
+            line = follow();
+        else
+            for (int i = 0; i < count[0]; i++) {
+                int p = moves[0][i];
+                int e = find(key() ^ key(p, player));
+                if (e < 0 || phi(e) != 0)
+                    replies.addLast(p, board.score(p, player));
+            }
+        nodes = total;
+        return lost ? LOST : UNKNOWN;
+
+    }
+
+    /* The proof of the last WON or LOST result: moves from the player to
+     * move on, packed as x * 19 + y, the winner's shortest known way to five
+     * against the loser's longest defence. Parts of the proof dropped from the
+     * table end the line early
+     */
+    public int[] line() {
+        return line;
+    }
+
+    /* After an UNKNOWN result: fill the list with the replies to the
+     * opponent's threats not proven to lose - returns false if the opponent
+     * doesn't threaten, in which case there is nothing to restrict
+     */
+    public boolean replies(EvalState.MoveList list) {
+        list.copy(replies);
+        return threatened;
+    }
+
+    /* Search until the attacker's win is proven or disproven, or the nodes
+     * run out - returns whether it was proven
+     */
+    private boolean prove(int attacker, boolean attacking, long nodeLimit) {
+        this.attacker = attacker;
+        this.nodeLimit = nodeLimit;
+        nodes = 0;
+        mid(0, INF, INF);
+        int e = find(key());
+        return e >= 0 && (attacking ? phi(e) : delta(e)) == 0;
+    }
+
+    /* Expand the node at ply until its numbers reach either threshold */
+    private void mid(int ply, int thPhi, int thDelta) {
+
+        if ((nodes++ & CHECK_NODES) == 0 && deadline > 0 && System.currentTimeMillis() >= deadline)
+            nodeLimit = nodes;                                                  // Out of time - and nodes
+        long key = key(), start = nodes;
+        int mover = mover(ply), n = generate(ply);
+
+        // Decided without a search
+        if (n < 0) {
+            boolean win = n == -1;
+            store(key, win ? 0 : INF, win ? INF : 0, 0, n == -1 ? 1 : 2, 1);
+            return;
+        }
+
+        int[] list = moves[ply];
+        while (true) {
+
+            // Sum up the children: the node is won through any child lost
+            // for its own mover, and lost only if every child is won
+            int phi = INF, delta = 0, best = 0, second = INF, bestPhi = 0;
+            for (int i = 0; i < n; i++) {
+                int e = find(key ^ key(list[i], mover));
+                int cPhi = e < 0 ? 1 : phi(e), cDelta = e < 0 ? 1 : delta(e);
+                if (cDelta < phi) {
+                    second = phi;
+                    phi = cDelta;
+                    best = i;
+                    bestPhi = cPhi;
+                } else if (cDelta < second)
+                    second = cDelta;
+                delta = (int) Math.min((long) delta + cPhi, INF);
+            }
+            if (delta == INF && phi != 0)
+                delta = INF - 1;                                                // Large, not decided
+
+            if (phi >= thPhi || delta >= thDelta || nodes >= nodeLimit) {
+                store(key, phi, delta, list[best], length(key, list, n, mover, phi, delta), nodes - start);
+                return;
+            }
+
+            // Search the best child until it is no longer the best
+            int p = list[best];
+            int cThPhi = (int) Math.min((long) thDelta + bestPhi - delta, INF);
+            int cThDelta = Math.min(thPhi, second == INF ? INF : second + 1);
+            board.move(p / 19, p % 19, mover);
+            if (ply + 1 >= MAX_PLY) {                                           // Too long - given up
+                boolean attacking = -mover == attacker;
+                store(key(), attacking ? INF : 0, attacking ? 0 : INF, 0, 0, 1);
+            } else
+                mid(ply + 1, cThPhi, cThDelta);
+            board.undo();
+
+        }
+
+    }
+
+    /* List the moves at ply: for the attacker, threats, and for the
+     * defender, every reply that might hold - returns their number, or -1 if
+     * the mover wins at once and -2 if it loses
+     */
+    private int generate(int ply) {
+
+        int[] list = moves[ply];
+        int mover = mover(ply), other = -mover, n;
+
+        if (board.threats(mover, PatternEval.FIVE, PatternEval.FIVE, list, 0) > 0)
+            return count[ply] = -1;
+
+        // A four of the other side must be blocked, and two of them can't
+        n = board.threats(other, PatternEval.FIVE, PatternEval.FIVE, list, 0);
+        if (n > 1)
+            return count[ply] = -2;
+
+        // The attacker only blocks with a threat of its own
+        if (mover == attacker) {
+            int block = n == 1 ? list[0] : -1;
+            n = board.threats(mover, PatternEval.OPEN_THREE, PatternEval.OPEN_FOUR, list, 0);
+            if (block >= 0) {
+                boolean threat = false;
+                for (int i = 0; i < n && !threat; i++)
+                    threat = list[i] == block;
+                list[0] = block;
+                n = threat ? 1 : 0;
+            }
+
+        // The defender answers a three by taking one of the points that
+        // would make it a four, or with a four of its own. Below the root
+        // the attacker has just made the three; at the root there may be
+        // none, and then no reply is forced
+        } else if (n == 0) {
+            if (ply == 0 && board.threats(other, PatternEval.OPEN_FOUR, PatternEval.OPEN_FOUR, list, 0) == 0)
+                return count[ply] = -1;
+            n = board.threats(other, PatternEval.FOUR, PatternEval.OPEN_FOUR, list, 0);
+            int m = board.threats(mover, PatternEval.FOUR, PatternEval.OPEN_FOUR, list, n);
+            for (int i = n; i < m; i++) {
+                boolean listed = false;
+                for (int j = 0; j < n && !listed; j++)
+                    listed = list[j] == list[i];
+                if (!listed)
+                    list[n++] = list[i];
+            }
+        }
+
+        // Without a threat to answer, the attacker has failed
+        if (n == 0)
+            return count[ply] = mover == attacker ? -2 : -1;
+
+        // Strongest moves first, so that equal numbers favour them
+        for (int i = 1; i < n; i++) {
+            int p = list[i], value = board.score(p, mover), j = i;
+            for (; j > 0 && board.score(list[j - 1], mover) < value; j--)
+                list[j] = list[j - 1];
+            list[j] = p;
+        }
+        return count[ply] = n;
+
+    }
+
+    /* Plies to five once the attacker's win is proven: the attacker takes
+     * the shortest proven child, the defender the longest
+     */
+    private int length(long key, int[] list, int n, int mover, int phi, int delta) {
+        boolean attacking = mover == attacker;
+        if (attacking ? phi != 0 : delta != 0)
+            return 0;
+        int length = attacking ? MAX_LENGTH : 0;
+        for (int i = 0; i < n; i++) {
+            int e = find(key ^ key(list[i], mover));
+            if (e < 0 || (attacking ? delta(e) : phi(e)) != 0)
+                continue;
+            length = attacking ? Math.min(length, length(e)) : Math.max(length, length(e));
+        }
+        return Math.min(length + 1, MAX_LENGTH);
+    }
+
+    /* Follow a proven win from the root through the table */
+    private int[] follow() {
+
+        int[] result = new int[MAX_PLY + 2];
+        int ply = 0;
+        while (ply < MAX_PLY) {
+            int n = generate(ply), mover = mover(ply);
+            boolean attacking = mover == attacker;
+            int[] list = moves[ply];
+            if (n < 0) {
+                if (n == -1 && attacking)                                       // Five
+                    result[ply++] = list[0];
+                else if (n == -2 && !attacking) {                               // Two fours to block
+                    result[ply++] = list[0];
+                    result[ply++] = list[1];
+                }
+                break;
+            }
+            long key = key();
+            int next = -1, best = 0;
+            for (int i = 0; i < n; i++) {
+                int e = find(key ^ key(list[i], mover));
+                if (e < 0 || (attacking ? delta(e) : phi(e)) != 0)
+                    continue;
+                if (next < 0 || (attacking ? length(e) < best : length(e) > best)) {
+                    next = list[i];
+                    best = length(e);
+                }
+            }
+            if (next < 0)
+                break;
+            result[ply++] = next;
+            board.move(next / 19, next % 19, mover);
+        }
+
+        // Back to the root
+        for (int i = 0; i < ply && count[i] >= 0; i++)
+            board.undo();
+        int[] trimmed = new int[ply];
+        System.arraycopy(result, 0, trimmed, 0, ply);
+        return trimmed;
+
+    }
+
+    /* Player to move at ply */
+    private int mover(int ply) {
+        return ply % 2 == 0 ? player : -player;
+    }
+
+    private long key() {
+        return board.hash() ^ (attacker == GameRules.WHITE ? WHITE_KEY : 0);
+    }
+
+    private static long key(int p, int player) {
+        return Zobrist.key(player, p / 19, p % 19);
+    }
+
+    /* Index of the entry for key, or -1 */
+    private int find(long key) {
+        int slot = (int) key & mask;
+        if (keys[slot] == key)
+            return slot;
+        if (keys[slot + 1] == key)
+            return slot + 1;
+        return -1;
+    }
+
+    /* Remember a node's numbers, over the entry of its bucket with the
+     * least work behind it
+     */
+    private void store(long key, int phi, int delta, int move, int length, long work) {
+        int slot = (int) key & mask;
+        if (keys[slot] != key && (keys[slot + 1] == key || work(slot + 1) < work(slot)))
+            slot++;
+        if (keys[slot] == key)
+            work += work(slot);
+        keys[slot] = key;
+        numbers[slot] = (long) phi << 32 | delta;
+        info[slot] = move | Math.min(length, MAX_LENGTH) << 9 | (int) Math.min(work, MAX_WORK) << 17;
+    }
+
+    private int phi(int e) {
+        return (int) (numbers[e] >>> 32);
+    }
+
+    private int delta(int e) {
+        return (int) numbers[e];
+    }
+
+    private int length(int e) {
+        return info[e] >>> 9 & MAX_LENGTH;
+    }
+
+    private int work(int e) {
+        return info[e] >>> 17;
+    }
+
+}
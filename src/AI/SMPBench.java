@@ -0,0 +1,59 @@
+/*
+ * SMPBench: Time-to-depth and node rate of ABEvalAI's search for increasing
+ * numbers of threads, on a fixed middle-game position.
+ * Usage: SMPBench [max threads] [depth]
+ */
+
+package AI;
+
+import Main.GameRules;
+
+/**
+ *
+ * @author samuel
+ */
+public class SMPBench {
+
+    static final int[][] POSITION = {
+        {9, 9}, {10, 10}, {9, 10}, {8, 9}, {10, 8}, {9, 8}, {11, 9}, {10, 9}, {8, 10}
+    };
+
+    public static void main(String[] args) {
+
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+
+        run(1, depth);                                                          // Warm up
+        double base = 0;
+        System.out.println("threads\ttime (ms)\tnodes\tknps\tspeedup");
+        for (int t = 1; t <= maxThreads; t *= 2) {
+
+            long st = System.nanoTime();
+            long nodes = run(t, depth);
+            double ms = (System.nanoTime() - st) / 1e6;
+            if (t == 1)
+                base = ms;
+            System.out.printf("%d\t%.0f\t%d\t%.0f\t%.2f%n", t, ms, nodes, nodes / ms, base / ms);
+
+            if (t < maxThreads && t * 2 > maxThreads)
+                t = maxThreads / 2;                                             // Always end on max
+
+        }
+
+    }
+
+    /* Search the position with a fresh AI (and table), so that runs don't help
+     * each other - returns the number of nodes searched
+     */
+    private static long run(int threads, int depth) {
+        ABEvalAI ai = new ABEvalAI();
+        ai.setThreads(threads);
+        int player = GameRules.BLACK;
+        for (int[] m : POSITION) {
+            ai.play(m[0], m[1], player);
+            player = -player;
+        }
+        return ai.searchDepth(depth);
+    }
+
+}
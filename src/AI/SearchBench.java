@@ -0,0 +1,68 @@
+/*
+ * SearchBench: Nodes and time of fixed-depth ABEvalAI searches (one thread)
+ * over a suite of positions. Times are averaged over several runs; node
+ * counts only change between invocations, as the evaluation noise is salted
+ * per process, so compare totals over a few invocations.
+ * Usage: SearchBench [depth] [runs]
+ */
+
+package AI;
+
+import Main.GameRules;
+
+/**
+ *
+ * @author samuel
+ */
+public class SearchBench {
+
+    // Moves from the start, black first, white to move after each
+    static final int[][][] SUITE = {
+        SMPBench.POSITION,
+        {{9, 9}, {10, 10}, {8, 8}, {10, 9}, {10, 8}, {11, 10}, {9, 10}, {12, 10}, {8, 10}},
+        {{9, 9}, {9, 10}, {10, 9}, {8, 9}, {10, 10}, {11, 11}, {10, 8}, {10, 11}, {8, 11}},
+        {{5, 5}, {6, 6}, {5, 6}, {6, 5}, {7, 7}, {4, 4}, {5, 7}, {5, 4}, {8, 8}},
+        {{9, 9}, {8, 8}, {9, 8}, {9, 7}, {10, 9}, {8, 9}, {11, 9}},
+        {{9, 9}, {10, 9}, {9, 11}, {10, 10}, {8, 10}, {10, 11}, {10, 12}, {7, 9}, {11, 11}},
+        {{3, 3}, {4, 4}, {3, 5}, {5, 5}, {4, 3}, {6, 6}, {2, 3}},
+        {{9, 9}, {9, 8}, {8, 10}, {10, 8}, {11, 8}, {8, 8}, {7, 8}, {7, 11}, {10, 10}, {11, 11}, {8, 9}}
+    };
+
+    public static void main(String[] args) {
+
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        for (int[][] position : SUITE)                                          // Warm up
+            run(position, depth);
+
+        long totalNodes = 0;
+        double totalTime = 0;
+        System.out.println("position\tnodes\ttime (ms)");
+        for (int p = 0; p < SUITE.length; p++) {
+            long nodes = 0;
+            long st = System.nanoTime();
+            for (int r = 0; r < runs; r++)
+                nodes += run(SUITE[p], depth);
+            double ms = (System.nanoTime() - st) / 1e6 / runs;
+            System.out.printf("%d\t%d\t%.1f%n", p, nodes / runs, ms);
+            totalNodes += nodes / runs;
+            totalTime += ms;
+        }
+        System.out.printf("total\t%d\t%.1f%n", totalNodes, totalTime);
+
+    }
+
+    /* Search a position with a fresh AI - returns the number of nodes */
+    private static long run(int[][] position, int depth) {
+        ABEvalAI ai = new ABEvalAI();
+        ai.setThreads(1);
+        int player = GameRules.BLACK;
+        for (int[] m : position) {
+            ai.play(m[0], m[1], player);
+            player = -player;
+        }
+        return ai.searchDepth(depth);
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * SearchMonitor: Statistics of every search in the process, and a histogram
+ * of the time taken by moves, exposed through JMX as AI:type=SearchMonitor.
+ * AIs hand it their counts once per search and per move, so that it costs
+ * nothing while they think.
+ */
+
+package AI;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ *
+ * @author samuel
+ */
+public class SearchMonitor implements SearchMonitorMBean {
+
+    public static final String NAME = "AI:type=SearchMonitor";
+
+    private static final int BUCKETS = 20;                                      // Last from 2^18 ms up
+
+    private static SearchMonitor monitor;
+
+    private final SearchStats total = new SearchStats();
+    private final SearchStats last = new SearchStats();
+    private final long[] histogram = new long[BUCKETS];
+    private long searches, moves;
+
+    private SearchMonitor() {}
+
+    /* The monitor, registered with the platform MBean server on first use */
+    public static synchronized SearchMonitor get() {
+        if (monitor == null) {
+            monitor = new SearchMonitor();
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(monitor, new ObjectName(NAME));
+            } catch (JMException e) {
+                System.err.println("Search monitor not registered: " + e.getMessage());
+            }
+        }
+        return monitor;
+    }
+
+    /* Count a search */
+    synchronized void add(SearchStats search) {
+        total.add(search);
+        last.clear();
+        last.add(search);
+        searches++;
+    }
+
+    /* Count a move that took the given time (ns) */
+    synchronized void addMove(long time) {
+        long ms = time / 1000000;
+        int bucket = ms == 0 ? 0 : 64 - Long.numberOfLeadingZeros(ms);
+        histogram[Math.min(bucket, BUCKETS - 1)]++;
+        moves++;
+    }
+
+    public synchronized long getSearches() {
+        return searches;
+    }
+
+    public synchronized long getMoves() {
+        return moves;
+    }
+
+    public synchronized long getNodes() {
+        return total.nodes();
+    }
+
+    public synchronized long[] getNodesByDepth() {
+        return Arrays.copyOf(total.nodes, total.depth() + 1);
+    }
+
+    /* Nodes over the time spent searching them, pondering included */
+    public synchronized double getNodesPerSecond() {
+        return total.nodesPerSecond();
+    }
+
+    public synchronized double getCutoffRate() {
+        return total.cutoffRate();
+    }
+
+    public synchronized double getFirstMoveCutoffRate() {
+        return total.firstCutoffRate();
+    }
+
+    public synchronized double getTableHitRate() {
+        return total.hitRate();
+    }
+
+    public synchronized long getEvalCalls() {
+        return total.evals;
+    }
+
+    public synchronized long getSolverNodes() {
+        return total.solverNodes;
+    }
+
+    public synchronized double getBranchingFactor() {
+        return last.branchingFactor();
+    }
+
+    public synchronized long[] getThinkTimeHistogram() {
+        return histogram.clone();
+    }
+
+    public synchronized String getLastSearch() {
+        return last.toString();
+    }
+
+    public synchronized void reset() {
+        total.clear();
+        last.clear();
+        for (int i = 0; i < BUCKETS; i++)
+            histogram[i] = 0;
+        searches = moves = 0;
+    }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * SearchMonitorMBean: The management interface of SearchMonitor, as seen by
+ * JMX clients (jconsole, VisualVM, ...). Counts are totals since the start
+ * or the last reset, over all AIs in the process.
+ */
+
+package AI;
+
+/**
+ *
+ * @author samuel
+ */
+public interface SearchMonitorMBean {
+
+    long getSearches();
+
+    long getMoves();
+
+    long getNodes();
+
+    long[] getNodesByDepth();
+
+    double getNodesPerSecond();
+
+    double getCutoffRate();
+
+    double getFirstMoveCutoffRate();
+
+    double getTableHitRate();
+
+    long getEvalCalls();
+
+    long getSolverNodes();
+
+    /* Effective branching factor of the last search */
+    double getBranchingFactor();
+
+    /* Moves by think time: under 1 ms, then under 2, 4, 8, ... ms */
+    long[] getThinkTimeHistogram();
+
+    /* The last search, as text */
+    String getLastSearch();
+
+    void reset();
+
+}
@@ -0,0 +1,131 @@
+/*
+ * SearchStats: Counters of one search, or of many added together. Each
+ * search thread counts into its own, with plain increments and no clock, so
+ * that they can be left on; the threads' counters are added up once the
+ * search is over, with the time it took, and handed to SearchMonitor.
+ */
+
+package AI;
+
+/**
+ *
+ * @author samuel
+ */
+class SearchStats {
+
+    static final int DEPTHS = 64;                                               // Iterations counted
+
+    final long[] nodes = new long[DEPTHS];                                      // By iteration depth
+    final long[] mainNodes = new long[DEPTHS];                                  // Main thread's alone
+    int completed;                                                              // Its last full iteration
+    long time;                                                                  // ns, wall clock
+    long interior;                                                              // Nodes whose moves were searched
+    long cutoffs;                                                               // Of those, failing high
+    long firstCutoffs;                                                          // On the first move searched
+    long probes;                                                                // Transposition table
+    long hits;
+    long evals;
+    long solverNodes;                                                           // Threat searches
+
+    /* Count a node of the iteration to the given depth */
+    void node(int iteration) {
+        nodes[Math.min(iteration, DEPTHS - 1)]++;
+    }
+
+    /* Add another's counts to these */
+    void add(SearchStats other) {
+        for (int d = 0; d < DEPTHS; d++) {
+            nodes[d] += other.nodes[d];
+            mainNodes[d] += other.mainNodes[d];
+        }
+        completed = Math.max(completed, other.completed);
+        time += other.time;
+        interior += other.interior;
+        cutoffs += other.cutoffs;
+        firstCutoffs += other.firstCutoffs;
+        probes += other.probes;
+        hits += other.hits;
+        evals += other.evals;
+        solverNodes += other.solverNodes;
+    }
+
+    /* Add the main thread's counts, given the last iteration it completed */
+    void addMain(SearchStats main, int completed) {
+        add(main);
+        for (int d = 0; d < DEPTHS; d++)
+            mainNodes[d] += main.nodes[d];
+        this.completed = Math.max(this.completed, completed);
+    }
+
+    void clear() {
+        for (int d = 0; d < DEPTHS; d++)
+            nodes[d] = mainNodes[d] = 0;
+        completed = 0;
+        time = 0;
+        interior = cutoffs = firstCutoffs = probes = hits = evals = solverNodes = 0;
+    }
+
+    long nodes() {
+        long n = 0;
+        for (long count : nodes)
+            n += count;
+        return n;
+    }
+
+    /* Deepest iteration with any nodes, by any thread - the last one
+     * usually cut short
+     */
+    int depth() {
+        int d = DEPTHS - 1;
+        while (d > 0 && nodes[d] == 0)
+            d--;
+        return d;
+    }
+
+    /* Share of searched nodes that failed high */
+    double cutoffRate() {
+        return ratio(cutoffs, interior);
+    }
+
+    /* Share of cutoffs made by the first move searched, a measure of move
+     * ordering
+     */
+    double firstCutoffRate() {
+        return ratio(firstCutoffs, cutoffs);
+    }
+
+    /* Share of table probes that found an entry */
+    double hitRate() {
+        return ratio(hits, probes);
+    }
+
+    /* Effective branching factor: the growth of the main thread's nodes from
+     * one iteration to the next, averaged (geometrically) over those it
+     * completed - helpers search iterations out of turn, and the last one
+     * is cut short
+     */
+    double branchingFactor() {
+        int last = Math.min(completed, DEPTHS - 1), first = 1;
+        while (first < last && mainNodes[first] == 0)
+            first++;
+        return first >= last ? 0 : Math.pow((double)mainNodes[last] / mainNodes[first], 1.0 / (last - first));
+    }
+
+    /* Nodes searched per second */
+    double nodesPerSecond() {
+        return time == 0 ? 0 : nodes() * 1e9 / time;
+    }
+
+    private static double ratio(long a, long b) {
+        return b == 0 ? 0 : (double)a / b;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d nodes, depth %d (%d started), EBF %.2f, cutoffs %.1f%% (%.1f%% first), "
+                             + "table hits %.1f%%, %d evals, %d solver nodes",
+                             nodes(), completed, depth(), branchingFactor(), 100 * cutoffRate(), 100 * firstCutoffRate(),
+                             100 * hitRate(), evals, solverNodes);
+    }
+
+}
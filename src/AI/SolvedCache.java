@@ -0,0 +1,182 @@
+/*
+ * SolvedCache: Positions proven won or lost, kept on disk from one game and
+ * one run to the next. The file is a header and then a hash table of 16-byte
+ * records - key, result, checksum - in buckets of four, memory mapped for
+ * reading and writing: opening it reads nothing, a lookup touches one cache
+ * line, and a store is written back by the operating system. A record is only
+ * believed if its checksum matches, so that one torn by a crash, or by two
+ * threads or processes storing at once, reads as empty. Results are for the
+ * side to move, which is folded into the key, and moves are seen in the
+ * image of the position its key is the least key of (see Symmetry).
+ */
+
+package AI;
+
+import Main.GameRules;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ *
+ * @author samuel
+ */
+public class SolvedCache {
+
+    public static final String FILE = "five.solved";                            // Used by standard(...)
+
+    // Results (0 is reserved for empty records)
+    static final int WON = 1;
+    static final int LOST = 2;
+
+    static final int NO_MOVE = TranspositionTable.NO_MOVE;
+
+    private static final int MAGIC = 0x46534331;                                // "FSC1"
+    static final int BITS = 20;                                                 // Records, log 2: 16 MB
+    private static final int HEADER = 16;                                       // Magic, bits, spare
+    private static final int RECORD = 16;                                       // Key, entry, checksum
+    private static final int BUCKET = 4;                                        // Records
+    private static final long WHITE_KEY = 0x632BE59BD9B4E019L;                  // Side to move
+
+    /* Layout of an entry, from the low bits up: move (16) | distance (8) |
+     * result (2)
+     */
+    private static final int DISTANCE_SHIFT = 16;
+    private static final int RESULT_SHIFT = 24;
+
+    private static SolvedCache standard;
+    private static File standardFile;                                           // Its file, once looked for
+
+    private final MappedByteBuffer buffer;
+    private final int mask;                                                     // Bucket index mask
+
+    /* Map the cache in the given file, creating it with 2^bits records if it
+     * does not exist yet
+     */
+    public SolvedCache(File file, int bits) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            if (raf.length() == 0) {
+                raf.setLength(HEADER + ((long)RECORD << bits));                 // Zeroed: all empty
+                raf.writeInt(MAGIC);
+                raf.writeInt(bits);
+            } else {
+                if (raf.length() < HEADER || raf.readInt() != MAGIC)
+                    throw new IOException(file + " is not a solved position cache");
+                bits = raf.readInt();
+                if (bits < 2 || bits > 26 || raf.length() != HEADER + ((long)RECORD << bits))
+                    throw new IOException(file + " is damaged");
+            }
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            mask = (1 << bits) / BUCKET - 1;
+        } finally {
+            raf.close();                                                        // The mapping stays valid
+        }
+    }
+
+    /* The cache in FILE in the working directory, as standard(null) */
+    public static SolvedCache standard() {
+        return standard(null);
+    }
+
+    /* The cache in FILE in the given folder (null for the working
+     * directory), mapped once while the folder stays the same, or null if
+     * it can't be opened or created
+     */
+    public static synchronized SolvedCache standard(File folder) {
+        File file = new File(folder, FILE);
+        if (!file.equals(standardFile)) {
+            standardFile = file;
+            standard = null;
+            try {
+                standard = new SolvedCache(file, BITS);
+            } catch (IOException e) {
+                System.err.println("Solved position cache not used: " + e.getMessage());
+            }
+        }
+        return standard;
+    }
+
+    /* Look up a position, given its key and the side to move - returns the
+     * entry, or 0 if the position is not known
+     */
+    public int probe(long key, int player) {
+        key = key(key, player);
+        int at = offset(key);
+        for (int i = 0; i < BUCKET; i++, at += RECORD)
+            if (buffer.getLong(at) == key) {
+                int entry = buffer.getInt(at + 8);
+                if (entry != 0 && buffer.getInt(at + 12) == checksum(key, entry))
+                    return entry;
+            }
+        return 0;
+    }
+
+    /* Store a proven result for the side to move: the number of plies in the
+     * line proving it, and its first move, or NO_MOVE. A known position keeps
+     * the shortest line; a new one takes an empty record or else the one
+     * with the shortest line, which is the cheapest to prove again
+     */
+    public void store(long key, int player, int result, int distance, int move) {
+        key = key(key, player);
+        int entry = move & 0xFFFF | Math.min(distance, 0xFF) << DISTANCE_SHIFT | result << RESULT_SHIFT;
+        int at = offset(key), slot = at, shortest = Integer.MAX_VALUE;
+        for (int i = 0; i < BUCKET; i++, at += RECORD) {
+            int old = buffer.getInt(at + 8);
+            boolean valid = old != 0 && buffer.getInt(at + 12) == checksum(buffer.getLong(at), old);
+            if (valid && buffer.getLong(at) == key) {
+                if (distance(old) <= distance(entry) && result(old) == result)
+                    return;
+                slot = at;
+                break;
+            }
+            int length = valid ? distance(old) : -1;
+            if (length < shortest) {
+                shortest = length;
+                slot = at;
+            }
+        }
+        buffer.putLong(slot, key);
+        buffer.putInt(slot + 8, entry);
+        buffer.putInt(slot + 12, checksum(key, entry));
+    }
+
+    /* Size of the file (bytes), all of it mapped */
+    public long bytes() {
+        return buffer.capacity();
+    }
+
+    /* Write the cache out to the disk now, not at the system's leisure */
+    public void force() {
+        buffer.force();
+    }
+
+    private static long key(long key, int player) {
+        return player == GameRules.WHITE ? key ^ WHITE_KEY : key;
+    }
+
+    private int offset(long key) {
+        return HEADER + ((int)key & mask) * BUCKET * RECORD;
+    }
+
+    private static int checksum(long key, int entry) {
+        long h = (key ^ (long)entry << 32 ^ entry) * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ h >>> 32);
+    }
+
+    /* Entry accessors */
+    static int result(int entry) {
+        return entry >>> RESULT_SHIFT & 0x3;
+    }
+
+    static int distance(int entry) {
+        return entry >>> DISTANCE_SHIFT & 0xFF;
+    }
+
+    static int move(int entry) {
+        return entry & 0xFFFF;
+    }
+
+}
@@ -4,8 +4,8 @@
 
 package AI;
 
-import Main.MainPanel;
-import java.awt.Point;
+import Main.BitBoard;
+import Main.GameRules;
 import java.util.Random;
 
 /**
@@ -17,54 +17,55 @@ public class StupidAI extends BaseAI {
     protected static final int BUFFER = 1;
     protected static final Random RNG = new Random();
     
-    protected int[][] board = new int[19][19];
-    protected int lastX, lastY;
-    protected Point upperLeft = new Point(0, 0), lowerRight = new Point(0, 0);
+    protected static final int NO_BOX = -1;                                     // Before any stone
 
-    public StupidAI(MainPanel parent) {
-        super(parent);
-    }
+    protected BitBoard board = new BitBoard();
+    protected int box = NO_BOX;                                                 // Packed, as NodePool.box
 
     /* Stretch window to contain given point */
-    protected static void stretch(Point ul, Point lr, int x, int y) {
-        if (x < ul.x)
-            ul.x = x;
-        else if (x > lr.x)
-            lr.x = x;
-        if (y < ul.y)
-            ul.y = y;
-        else if (y > lr.y)
-            lr.y = y;
+    protected void stretch(int x, int y) {
+        box = box == NO_BOX ? NodePool.box(x, y, x, y) : NodePool.stretch(box, x, y);
+    }
+
+    /* Put a stone on the internal board */
+    protected void place(int x, int y, int player) {
+        board.set(x, y, player);
     }
 
-    /* Update internal state through game state */
+    /* Update internal state through opponent's move */
     public void update() {
-        lastX = parent.lastX;
-        lastY = parent.lastY;
-        if (MainPanel.inBoard(lastX, lastY) && board[lastX][lastY] == MainPanel.EMPTY) {
-            board[lastX][lastY] = MainPanel.BLACK;
-            if (upperLeft.x == 0 && lowerRight.x == 0) {
-                upperLeft.x = lowerRight.x = parent.lastX;
-                upperLeft.y = lowerRight.y = parent.lastY;
-            } else
-                stretch(upperLeft, lowerRight, parent.lastX, parent.lastY);
+        if (GameRules.inBoard(lastX, lastY) && board.isEmpty(lastX, lastY)) {
+            place(lastX, lastY, -player);
+            stretch(lastX, lastY);
         }
     }
 
     /* Update internal state through own move */
     public void update(int x, int y) {
-        board[x][y] = MainPanel.WHITE;
-        stretch(upperLeft, lowerRight, x, y);
+        place(x, y, player);
+        stretch(x, y);
+    }
+
+    /* Update internal state by taking back the last stone, shrinking the
+     * window to the stones left
+     */
+    public void undo(int x, int y) {
+        board.clear(x, y);
+        box = NO_BOX;
+        for (int i = 0; i < 19; i++)
+            for (int j = 0; j < 19; j++)
+                if (!board.isEmpty(i, j))
+                    stretch(i, j);
     }
 
     /* Produce next move */
-    public Point getMove() {
-        int x, y;
+    public int getMove() {
+        int ulx = NodePool.ulx(box), uly = NodePool.uly(box), x, y;
         do {
-            x = upperLeft.x - BUFFER + RNG.nextInt(lowerRight.x - upperLeft.x + 2 * BUFFER);
-            y = upperLeft.y - BUFFER + RNG.nextInt(lowerRight.y - upperLeft.y + 2 * BUFFER);
-        } while (!MainPanel.inBoard(x, y) || board[x][y] != MainPanel.EMPTY);
-        return new Point(x, y);
+            x = ulx - BUFFER + RNG.nextInt(NodePool.lrx(box) - ulx + 2 * BUFFER);
+            y = uly - BUFFER + RNG.nextInt(NodePool.lry(box) - uly + 2 * BUFFER);
+        } while (!GameRules.inBoard(x, y) || !board.isEmpty(x, y));
+        return x * 19 + y;
     }
 
 }
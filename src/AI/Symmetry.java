@@ -0,0 +1,111 @@
+/*
+ * Symmetry: The eight symmetries of the board (rotations and reflections),
+ * and the Zobrist keys of a position's eight images under them, kept up to
+ * date move by move like the position's own key. The least of the eight is a
+ * key shared by all images of a position, under which a search can store what
+ * it learns of one image for all of them - moves then stored as seen in the
+ * least image. Keys that equal the position's own tell the symmetries it has,
+ * under which moves come in equivalent groups of which one need be searched.
+ * Both only pay early in the game, when positions are small and near the
+ * centre, so the keys are kept only up to EARLY stones.
+ */
+
+package AI;
+
+/**
+ *
+ * @author samuel
+ */
+class Symmetry {
+
+    static final int COUNT = 8;
+    static final int EARLY = 12;                                                // Stones, at most
+
+    // Images of each point by symmetry, and points by their image
+    private static final int[][] IMAGE = new int[COUNT][19 * 19];
+    private static final int[][] INVERSE = new int[COUNT][19 * 19];
+
+    static {
+        for (int s = 0; s < COUNT; s++)
+            for (int x = 0; x < 19; x++)
+                for (int y = 0; y < 19; y++) {
+                    int ix = (s & 1) != 0 ? 18 - x : x, iy = (s & 2) != 0 ? 18 - y : y;
+                    int image = (s & 4) != 0 ? iy * 19 + ix : ix * 19 + iy;
+                    IMAGE[s][x * 19 + y] = image;
+                    INVERSE[s][image] = x * 19 + y;
+                }
+    }
+
+    private final long[] keys = new long[COUNT];                                // Identity first
+    private int stones;
+    private int least;                                                          // Of the last canonical()
+
+    /* Image of a packed point under symmetry s: a reflection in x if bit 0
+     * is set, then in y if bit 1 is, then a swap of x and y if bit 2 is
+     */
+    static int transform(int p, int s) {
+        return IMAGE[s][p];
+    }
+
+    /* Point whose image under symmetry s is p */
+    static int inverse(int p, int s) {
+        return INVERSE[s][p];
+    }
+
+    /* Modify keys by adding a stone */
+    void move(int p, int player) {
+        if (++stones <= EARLY)
+            toggle(p, player);
+    }
+
+    /* Modify keys by removing the stone last added */
+    void undo(int p, int player) {
+        if (stones-- <= EARLY)
+            toggle(p, player);
+    }
+
+    private void toggle(int p, int player) {
+        for (int s = 0; s < COUNT; s++)
+            keys[s] ^= Zobrist.key(player, IMAGE[s][p]);
+    }
+
+    /* Key to store the position under, given its own: the least key of its
+     * images early in the game, and its own after that. The symmetry giving
+     * it is left for symmetry()
+     */
+    long canonical(long hash) {
+        least = 0;
+        if (stones > EARLY)
+            return hash;
+        for (int s = 1; s < COUNT; s++)
+            if (keys[s] < keys[least])
+                least = s;
+        return keys[least];
+    }
+
+    /* Symmetry taking the position to the image canonical() keyed it by */
+    int symmetry() {
+        return least;
+    }
+
+    /* The symmetries other than the identity under which the position is
+     * its own image, as a bit set - none after the early game
+     */
+    int automorphisms() {
+        int set = 0;
+        if (stones <= EARLY)
+            for (int s = 1; s < COUNT; s++)
+                if (keys[s] == keys[0])
+                    set |= 1 << s;
+        return set;
+    }
+
+    /* Produce an independent copy */
+    Symmetry copy() {
+        Symmetry copy = new Symmetry();
+        System.arraycopy(keys, 0, copy.keys, 0, COUNT);
+        copy.stones = stones;
+        return copy;
+    }
+
+}
@@ -0,0 +1,257 @@
+/*
+ * ThreatSolver: Searches for a forced win made only of threats - fours
+ * (victory by continuous fours, VCF) and optionally open threes (victory by
+ * continuous threats, VCT) - answering each with the opponent's only
+ * sensible replies: the block of a four, and the blocks of a three or a
+ * counter-four. With so few moves at each ply, lines of 20 and more plies
+ * are proven in milliseconds. Threats are read from a PatternEval kept in
+ * step with the game.
+ */
+
+package AI;
+
+/**
+ *
+ * @author samuel
+ */
+class ThreatSolver {
+
+    private static final int MAX_PLY = 64;
+    private static final int CHECK_NODES = 0x3F;                                // Clock check interval: nodes are dear
+
+    // Table results
+    private static final int WIN = 1;
+    private static final int NO_WIN = 2;
+    private static final long THREES_KEY = 0x9E3779B97F4A7C15L;                 // Keeps VCF / VCT apart
+    private static final long WHITE_KEY = 0xC2B2AE3D27D4EB4FL;                  // And the attackers
+
+    private final PatternEval board;
+    private final long[] keys;
+    private final int[] data;                                                   // Result | depth | move
+    private final int mask;
+
+    // Current search
+    private long nodes, nodeLimit;
+    private long deadline;                                                      // ms, 0 for none
+    private boolean threes;
+    private boolean lines;                                                      // Whole lines wanted
+    private final int[][] moves = new int[MAX_PLY + 1][19 * 19 * 2];
+    private final int[][] line = new int[MAX_PLY + 2][MAX_PLY + 2];             // Winning line by ply
+    private final int[] lineLength = new int[MAX_PLY + 2];
+
+    /* Create with a table of 2^bits entries */
+    public ThreatSolver(int bits) {
+        this(new PatternEval(), bits);
+    }
+
+    private ThreatSolver(PatternEval board, int bits) {
+        this.board = board;
+        keys = new long[1 << bits];
+        data = new int[1 << bits];
+        mask = (1 << bits) - 1;
+    }
+
+    /* Memory (bytes) of the table of a solver created with the given bits */
+    static long bytes(int bits) {
+        return (8L + 4) << bits;
+    }
+
+    /* Produce an independent copy of the position, with an empty table */
+    public ThreatSolver copy() {
+        return new ThreatSolver(board.copy(), Integer.numberOfTrailingZeros(keys.length));
+    }
+
+    /* Modify position by adding a move */
+    public void move(int x, int y, int player) {
+        board.move(x, y, player);
+    }
+
+    /* Modify position by undoing a move */
+    public void undo() {
+        board.undo();
+    }
+
+    /* Number of nodes searched by the last solve */
+    public long nodes() {
+        return nodes;
+    }
+
+    /* Search for a forced win for the given player, to move, within maxPly
+     * plies and nodeLimit nodes, and until the deadline (ms, 0 for none) -
+     * produces the winning line, moves packed as x * 19 + y from the
+     * player's first move on, or null if none was found
+     */
+    public int[] solve(int player, boolean threes, int maxPly, long nodeLimit, long deadline) {
+        this.deadline = deadline;
+        if (!search(player, threes, maxPly, nodeLimit, true))
+            return null;
+        int[] result = new int[lineLength[0]];
+        System.arraycopy(line[0], 0, result, 0, result.length);
+        return result;
+    }
+
+    /* As solve, without producing the line, nor a deadline */
+    public boolean wins(int player, boolean threes, int maxPly, long nodeLimit) {
+        deadline = 0;
+        return search(player, threes, maxPly, nodeLimit, false);
+    }
+
+    /* Search for a win, producing its line if lines are wanted */
+    private boolean search(int player, boolean threes, int maxPly, long nodeLimit, boolean lines) {
+
+        this.threes = threes;
+        this.lines = lines;
+        this.nodeLimit = nodeLimit;
+        nodes = 0;
+
+        // Deepen a move pair at a time, so that short wins are found before
+        // long lines are tried
+        boolean win = false;
+        for (int depth = 1; depth <= Math.min(maxPly, MAX_PLY) && !win && nodes < nodeLimit; depth += 2)
+            win = attack(player, 0, depth);
+        return win;
+
+    }
+
+    /* Attacker to move: make a threat that still wins whatever the reply */
+    private boolean attack(int attacker, int ply, int depth) {
+
+        count();
+        int[] list = moves[ply];
+
+        // Five on the board
+        if (board.threats(attacker, PatternEval.FIVE, PatternEval.FIVE, list, 0) > 0) {
+            setLine(ply, list[0]);
+            return true;
+        }
+        if (depth <= 0 || nodes >= nodeLimit)
+            return false;
+
+        // Already known - only its first move is, so a win is searched again
+        // if the whole line is wanted
+        long key = board.hash() ^ (threes ? THREES_KEY : 0) ^ (attacker < 0 ? WHITE_KEY : 0);
+        int slot = (int) key & mask;
+        if (keys[slot] == key) {
+            int result = data[slot] & 3, known = data[slot] >>> 2 & 0xFF;
+            if (result == WIN && !lines) {
+                setLine(ply, data[slot] >>> 10);
+                return true;
+            } else if (result == NO_WIN && known >= depth)
+                return false;
+        }
+
+        // A four of the defender must be blocked, and the block must itself
+        // be a threat; otherwise any four (or open three) will do
+        int n = board.threats(-attacker, PatternEval.FIVE, PatternEval.FIVE, list, 0);
+        if (n > 1)
+            return store(key, NO_WIN, depth, 0);
+        int min = threes ? PatternEval.OPEN_THREE : PatternEval.FOUR;
+        if (n == 1) {
+            int p = list[0];
+            n = board.threats(attacker, min, PatternEval.OPEN_FOUR, list, 0);
+            boolean threat = false;
+            for (int i = 0; i < n && !threat; i++)
+                threat = list[i] == p;
+            list[0] = p;
+            n = threat ? 1 : 0;
+        } else {
+            n = board.threats(attacker, PatternEval.FOUR, PatternEval.OPEN_FOUR, list, 0);
+            if (threes)
+                n = board.threats(attacker, PatternEval.OPEN_THREE, PatternEval.OPEN_THREE, list, n);
+        }
+
+        // Strongest threats first
+        for (int i = 1; i < n; i++) {
+            int p = list[i], value = board.score(p, attacker), j = i;
+            for (; j > 0 && board.score(list[j - 1], attacker) < value; j--)
+                list[j] = list[j - 1];
+            list[j] = p;
+        }
+
+        for (int i = 0; i < n; i++) {
+            int p = list[i];
+            board.move(p / 19, p % 19, attacker);
+            boolean win = defend(attacker, ply + 1, depth - 1);
+            board.undo();
+            if (win) {
+                line[ply][ply] = p;
+                System.arraycopy(line[ply + 1], ply + 1, line[ply], ply + 1, lineLength[ply + 1] - ply - 1);
+                lineLength[ply] = lineLength[ply + 1];
+                return store(key, WIN, depth, p);
+            }
+        }
+
+        return store(key, NO_WIN, depth, 0);
+
+    }
+
+    /* Defender to move, after a threat: every reply must still lose */
+    private boolean defend(int attacker, int ply, int depth) {
+
+        count();
+        int[] list = moves[ply];
+
+        // The defender makes five
+        if (board.threats(-attacker, PatternEval.FIVE, PatternEval.FIVE, list, 0) > 0)
+            return false;
+
+        // Blocking a four is forced, and two of them can't be blocked
+        int n = board.threats(attacker, PatternEval.FIVE, PatternEval.FIVE, list, 0);
+        if (n >= 2) {
+            line[ply][ply] = list[0];
+            line[ply][ply + 1] = list[1];
+            lineLength[ply] = ply + 2;
+            return true;
+        }
+
+        // A three is answered by taking one of its four points, or by a
+        // counter-four
+        if (n == 0) {
+            n = board.threats(attacker, PatternEval.FOUR, PatternEval.OPEN_FOUR, list, 0);
+            n = board.threats(-attacker, PatternEval.FOUR, PatternEval.FIVE, list, n);
+        }
+
+        for (int i = 0; i < n; i++) {
+            int p = list[i];
+            board.move(p / 19, p % 19, -attacker);
+            boolean win = attack(attacker, ply + 1, depth - 1);
+            board.undo();
+            if (!win)
+                return false;
+            if (i == 0) {
+                line[ply][ply] = p;
+                System.arraycopy(line[ply + 1], ply + 1, line[ply], ply + 1, lineLength[ply + 1] - ply - 1);
+                lineLength[ply] = lineLength[ply + 1];
+            }
+        }
+        return n > 0;
+
+    }
+
+    /* Count a node, and check the clock on the first and every so often
+     * after: once past the deadline, the nodes have run out
+     */
+    private void count() {
+        if ((nodes++ & CHECK_NODES) == 0 && deadline > 0 && System.currentTimeMillis() >= deadline)
+            nodeLimit = nodes;
+    }
+
+    /* End the line at ply with the given move */
+    private void setLine(int ply, int p) {
+        line[ply][ply] = p;
+        lineLength[ply] = ply + 1;
+    }
+
+    /* Remember a result - unless the search ran out of nodes, which proves
+     * nothing
+     */
+    private boolean store(long key, int result, int depth, int move) {
+        if (result == NO_WIN && nodes >= nodeLimit)
+            return false;
+        int slot = (int) key & mask;
+        keys[slot] = key;
+        data[slot] = result | Math.min(depth, 0xFF) << 2 | move << 10;
+        return result == WIN;
+    }
+
+}
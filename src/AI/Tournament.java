@@ -0,0 +1,346 @@
+/*
+ * Tournament: Self-play match between two engines, to tell whether a change
+ * makes the engine stronger. Games start from balanced openings - short
+ * positions near the centre that the evaluation scores close to even - and
+ * each opening is played twice, the engines swapping colours. Games are
+ * played headless, one per core at a time, each engine on one thread. The
+ * result is reported as an Elo difference with a 95% error bar, and the
+ * match stops early once a sequential probability ratio test (SPRT) decides
+ * between the two hypotheses elo0 and elo1 (H0: A is elo0 stronger than B,
+ * H1: A is elo1 stronger).
+ *
+ * Engines are given as name[:key=value,...]:
+ *     ab      ABEvalAI - ms (per move, 100 by default), nodes, tt (MB),
+ *             leaf (0 / 1), eval (vector / pattern), power and half
+ *             (VectorEval's values of lines), book (a file to open from),
+ *             solved (a file of solved positions, shared by all games)
+ *     mcts    MCTSAI - ms, playouts
+ *     stupid  StupidAI
+ * Usage: Tournament A B [games] [threads] [elo0] [elo1]
+ * e.g.   Tournament ab:nodes=20000 ab:nodes=20000,half=0.3 2000 4 0 10
+ */
+
+package AI;
+
+import Main.GameRules;
+import Main.GameSession;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ * @author samuel
+ */
+public class Tournament {
+
+    // Openings: black, white, black within RADIUS of the centre, the most
+    // even of CANDIDATES times as many
+    private static final int OPENINGS = 500;
+    private static final int RADIUS = 2;
+    private static final int CANDIDATES = 4;
+    private static final long OPENING_SEED = 1;                                 // Same set every run
+
+    private static final long MOVE_TIME = 100;                                  // ms, unless given
+
+    // SPRT error rates, and games between reports
+    private static final double ALPHA = 0.05;
+    private static final double BETA = 0.05;
+    private static final int REPORT = 20;
+
+    private static final PrintStream OUT = System.out;
+    private static final Map<String, OpeningBook> books = new HashMap<String, OpeningBook>();
+    private static final Map<String, SolvedCache> caches = new HashMap<String, SolvedCache>();
+
+    private final String[] specs;
+    private final int[][] openings;
+    private final double elo0, elo1;
+    private final int maxGames;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile boolean stop;
+
+    // Results for engine A, and the SPRT bounds
+    private int wins, draws, losses;
+    private final double lower = Math.log(BETA / (1 - ALPHA)), upper = Math.log((1 - BETA) / ALPHA);
+    private final long start = System.currentTimeMillis();
+
+    public Tournament(String a, String b, int maxGames, double elo0, double elo1) {
+        specs = new String[] {a, b};
+        this.maxGames = maxGames;
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+        openings = openings();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        if (args.length < 2) {
+            OUT.println("Usage: Tournament A B [games] [threads] [elo0] [elo1]");
+            return;
+        }
+        int games = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        double elo0 = args.length > 4 ? Double.parseDouble(args[4]) : 0;
+        double elo1 = args.length > 5 ? Double.parseDouble(args[5]) : 10;
+
+        // A bad description is reported now, not by every worker's first game
+        for (int i = 0; i < 2; i++)
+            try {
+                engine(args[i]);
+            } catch (IllegalArgumentException e) {
+                OUT.println("Bad engine " + args[i] + ": " + e.getMessage());
+                return;
+            }
+
+        // Engines' diagnostics would drown the report
+        System.setOut(new PrintStream(new OutputStream() {
+            public void write(int b) {}
+            public void write(byte[] b, int off, int len) {}
+        }));
+
+        final Tournament t = new Tournament(args[0], args[1], games, elo0, elo1);
+        OUT.printf("%s vs %s: up to %d games from %d openings, %d threads, SPRT elo0 %.1f elo1 %.1f%n",
+                   args[0], args[1], games, t.openings.length, threads, elo0, elo1);
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Runnable() {
+                public void run() {
+                    t.play();
+                }
+            });
+            workers[i].start();
+        }
+        for (Thread w : workers)
+            w.join();
+        OUT.println(t.verdict());
+
+    }
+
+    /* Worker logic: play games until the match is over */
+    void play() {
+        int game;
+        while (!stop && (game = next.getAndIncrement()) < maxGames) {
+
+            // Game 2k and 2k + 1 share an opening, A playing black in the first
+            int[] opening = openings[game / 2 % openings.length];
+            boolean aBlack = game % 2 == 0;
+            Engine a = engine(specs[0]), b = engine(specs[1]);
+            GameSession session = aBlack ? new GameSession(a, b) : new GameSession(b, a);
+            int player = GameRules.BLACK;
+            for (int p : opening) {
+                session.setUp(p / 19, p % 19, player);
+                player = -player;
+            }
+            int winner = session.playOut();
+            session.end();
+            record(winner == GameRules.EMPTY ? 0 : (winner == GameRules.BLACK) == aBlack ? 1 : -1);
+
+        }
+    }
+
+    /* Count a game's result for A (1, 0 or -1), and check the SPRT */
+    private synchronized void record(int result) {
+        if (stop)
+            return;
+        if (result > 0)
+            wins++;
+        else if (result < 0)
+            losses++;
+        else
+            draws++;
+        int n = wins + draws + losses;
+        double llr = llr();
+        if (llr <= lower || llr >= upper || n >= maxGames)
+            stop = true;
+        if (n % REPORT == 0 || stop)
+            OUT.println(report());
+    }
+
+    /* Elo difference, from the mean score */
+    private static double elo(double score) {
+        score = Math.min(Math.max(score, 1e-6), 1 - 1e-6);
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    /* Expected score from an Elo difference */
+    private static double score(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /* Mean score of the given numbers of results */
+    private static double mean(double w, double d, double l) {
+        return (w + d / 2) / (w + d + l);
+    }
+
+    /* Variance of the score of one game */
+    private static double variance(double w, double d, double l) {
+        double m = mean(w, d, l);
+        return (w * (1 - m) * (1 - m) + d * (0.5 - m) * (0.5 - m) + l * m * m) / (w + d + l);
+    }
+
+    /* Log-likelihood ratio of H1 to H0, by the normal approximation on the
+     * game scores (win 1, draw 1/2, loss 0). Half a game of each result is
+     * added, so that the variance is known from the start and a one-sided
+     * match is decided too
+     */
+    private double llr() {
+        double w = wins + 0.5, d = draws + 0.5, l = losses + 0.5, n = w + d + l;
+        double s0 = score(elo0), s1 = score(elo1);
+        return (s1 - s0) * (2 * mean(w, d, l) - s0 - s1) / (2 * variance(w, d, l) / n);
+    }
+
+    private String report() {
+        int n = wins + draws + losses;
+        double mean = n == 0 ? 0.5 : mean(wins, draws, losses);
+        double var = n == 0 ? 0 : variance(wins, draws, losses);
+        double margin = 1.96 * Math.sqrt(var / Math.max(1, n));
+        double elo = elo(mean), error = (elo(mean + margin) - elo(mean - margin)) / 2;
+        long elapsed = System.currentTimeMillis() - start;
+        return String.format("%d games  +%d =%d -%d  Elo %.1f +- %.1f  LLR %.2f [%.2f, %.2f]  %.0f games / h",
+                             n, wins, draws, losses, elo, error, llr(), lower, upper,
+                             n * 3600000.0 / Math.max(1, elapsed));
+    }
+
+    private String verdict() {
+        double llr = llr();
+        return llr >= upper ? "H1 accepted: A is stronger by about " + elo1 + " Elo or more"
+             : llr <= lower ? "H0 accepted: A is not stronger by " + elo1 + " Elo"
+             : "No decision";
+    }
+
+    /* Balanced openings: three stones near the centre - of many such
+     * positions, those closest to even as far as the evaluation can tell.
+     * Its noise is left out, so that every run gets the same openings
+     */
+    static int[][] openings() {
+        Random rng = new Random(OPENING_SEED);
+        List<int[]> list = new ArrayList<int[]>();
+        final Map<int[], Double> balance = new HashMap<int[], Double>();
+        Set<Long> seen = new HashSet<Long>();
+        for (int tries = 0; list.size() < CANDIDATES * OPENINGS && tries < 100 * OPENINGS; tries++) {
+            VectorEval eval = new VectorEval();
+            int[] opening = new int[3];
+            int player = GameRules.BLACK;
+            for (int i = 0; i < opening.length; i++) {
+                int x, y;
+                do {
+                    x = 9 - RADIUS + rng.nextInt(2 * RADIUS + 1);
+                    y = 9 - RADIUS + rng.nextInt(2 * RADIUS + 1);
+                } while (!eval.isEmpty(x, y));
+                eval.move(x, y, player);
+                opening[i] = x * 19 + y;
+                player = -player;
+            }
+            if (seen.add(eval.hash())) {
+                list.add(opening);
+                balance.put(opening, Math.abs(eval.plainEvaluate()));
+            }
+        }
+        Collections.sort(list, new Comparator<int[]>() {
+            public int compare(int[] a, int[] b) {
+                return Double.compare(balance.get(a), balance.get(b));
+            }
+        });
+        return list.subList(0, Math.min(OPENINGS, list.size())).toArray(new int[0][]);
+    }
+
+    /* The book in the given file, mapped once for all games */
+    private static synchronized OpeningBook book(String file) {
+        OpeningBook book = books.get(file);
+        if (book == null) {
+            try {
+                book = new OpeningBook(new File(file));
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Cannot open book " + file + ": " + e.getMessage());
+            }
+            books.put(file, book);
+        }
+        return book;
+    }
+
+    /* The solved position cache in the given file, mapped once for all games */
+    private static synchronized SolvedCache solved(String file) {
+        SolvedCache cache = caches.get(file);
+        if (cache == null) {
+            try {
+                cache = new SolvedCache(new File(file), SolvedCache.BITS);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Cannot open cache " + file + ": " + e.getMessage());
+            }
+            caches.put(file, cache);
+        }
+        return cache;
+    }
+
+    /* Create an engine from its description */
+    static Engine engine(String spec) {
+
+        int colon = spec.indexOf(':');
+        String name = colon < 0 ? spec : spec.substring(0, colon);
+        long ms = MOVE_TIME, limit = Long.MAX_VALUE;
+        int tt = 4;
+        boolean leaf = false, pattern = false;
+        double power = VectorEval.POWER, half = VectorEval.HALF_OPEN;
+        String book = null, solved = null;
+        if (colon >= 0)
+            for (String option : spec.substring(colon + 1).split(",")) {
+                String[] kv = option.split("=");
+                String key = kv[0], value = kv.length > 1 ? kv[1] : "";
+                if (key.equals("ms"))
+                    ms = Long.parseLong(value);
+                else if (key.equals("nodes") || key.equals("playouts"))
+                    limit = Long.parseLong(value);
+                else if (key.equals("tt"))
+                    tt = Integer.parseInt(value);
+                else if (key.equals("leaf"))
+                    leaf = value.equals("1");
+                else if (key.equals("eval"))
+                    pattern = value.equals("pattern");
+                else if (key.equals("power"))
+                    power = Double.parseDouble(value);
+                else if (key.equals("half"))
+                    half = Double.parseDouble(value);
+                else if (key.equals("book"))
+                    book = value;
+                else if (key.equals("solved"))
+                    solved = value;
+                else
+                    throw new IllegalArgumentException("Unknown option " + key + " in " + spec);
+            }
+
+        if (name.equals("ab")) {
+            EvalState eval = pattern ? new PatternEval()
+                           : new VectorEval(power, half);
+            ABEvalAI ai = new ABEvalAI(tt, eval);
+            ai.setThreads(1);
+            ai.setPonder(false);
+            ai.setLeafSolve(leaf);
+            ai.setBudget(ms, limit);
+            if (book != null)
+                ai.setBook(book(book));
+            if (solved != null)
+                ai.setSolved(solved(solved));
+            return ai;
+        } else if (name.equals("mcts")) {
+            MCTSAI ai = new MCTSAI();
+            ai.setThreads(1);
+            ai.setBudget(ms, limit);
+            return ai;
+        } else if (name.equals("stupid"))
+            return new StupidAI();
+        throw new IllegalArgumentException("Unknown engine " + name);
+
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * TranspositionTable: Fixed-size table of search results keyed by Zobrist key.
+ * Entries are packed into parallel long arrays so that the table costs no
+ * allocation after construction and can be kept from one move to the next.
+ * Each bucket holds two slots: a depth-preferred slot, only overwritten by a
+ * deeper (or stale) result, and an always-replace slot.
+ *
+ * Slots are read and written without locks: the key is stored XORed with the
+ * data, so a slot torn by two concurrent writers fails the key check on read
+ * and is simply treated as a miss.
+ */
+
+package AI;
+
+/**
+ *
+ * @author samuel
+ */
+class TranspositionTable {
+
+    // Bound types (0 is reserved for empty slots)
+    static final int LOWER = 1;     // Score is a lower bound (search failed high)
+    static final int UPPER = 2;     // Score is an upper bound (search failed low)
+    static final int EXACT = 3;
+
+    static final int NO_MOVE = 0xFFFF;
+
+    /* Layout of a data word, from the low bits up:
+     * score (32, float bits) | move (16) | depth (8) | bound (2) | age (6)
+     */
+    private static final int MOVE_SHIFT = 32;
+    private static final int DEPTH_SHIFT = 48;
+    private static final int BOUND_SHIFT = 56;
+    private static final int AGE_SHIFT = 58;
+
+    private static final int SLOT_BYTES = 16;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int mask;         // Bucket index mask
+    private int age = 0;
+
+    public TranspositionTable(int megabytes) {
+        // Round down to a power of two number of buckets of two slots each
+        long buckets = Math.max(1, ((long)megabytes << 20) / (2 * SLOT_BYTES));
+        int n = Integer.highestOneBit((int)Math.min(buckets, 1 << 29));
+        keys = new long[2 * n];
+        data = new long[2 * n];
+        mask = n - 1;
+    }
+
+    /* Mark the start of a new search, making older entries replaceable */
+    public void newSearch() {
+        age = (age + 1) & 0x3F;
+    }
+
+    /* Remove all entries */
+    public void clear() {
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = 0;
+            data[i] = 0;
+        }
+    }
+
+    /* Look up the given key - returns the packed entry, or 0 if not found */
+    public long probe(long key) {
+        int i = ((int)key & mask) << 1;
+        long d = data[i];
+        if ((keys[i] ^ d) == key && d != 0)
+            return d;
+        d = data[i + 1];
+        if ((keys[i + 1] ^ d) == key && d != 0)
+            return d;
+        return 0;
+    }
+
+    /* Store a search result for the given key */
+    public void store(long key, double score, int bound, int depth, int move) {
+        int i = ((int)key & mask) << 1;
+        long d = pack(score, bound, depth, move);
+
+        // Keep the deeper result of the current search in the first slot
+        long old = data[i];
+        if ((keys[i] ^ old) != key && depth(old) > depth && age(old) == age)
+            i++;
+        else if ((keys[i] ^ old) == key && move == NO_MOVE)
+            d = pack(score, bound, depth, move(old));
+
+        keys[i] = key ^ d;
+        data[i] = d;
+    }
+
+    private long pack(double score, int bound, int depth, int move) {
+        return (Float.floatToRawIntBits((float)score) & 0xFFFFFFFFL)
+             | ((long)(move & 0xFFFF) << MOVE_SHIFT)
+             | ((long)Math.min(depth, 0xFF) << DEPTH_SHIFT)
+             | ((long)bound << BOUND_SHIFT)
+             | ((long)age << AGE_SHIFT);
+    }
+
+    /* Pack a point into a move */
+    static int move(int x, int y) {
+        return x * 19 + y;
+    }
+
+    /* Entry accessors */
+    static double score(long entry) {
+        return Float.intBitsToFloat((int)entry);
+    }
+
+    static int move(long entry) {
+        return (int)(entry >>> MOVE_SHIFT) & 0xFFFF;
+    }
+
+    static int depth(long entry) {
+        return (int)(entry >>> DEPTH_SHIFT) & 0xFF;
+    }
+
+    static int bound(long entry) {
+        return (int)(entry >>> BOUND_SHIFT) & 0x3;
+    }
+
+    private static int age(long entry) {
+        return (int)(entry >>> AGE_SHIFT) & 0x3F;
+    }
+
+}
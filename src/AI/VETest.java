@@ -5,7 +5,9 @@
 
 package AI;
 
-import java.awt.Point;
+import Main.GameRules;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
 
 /**
  *
@@ -15,20 +17,98 @@ public class VETest {
 
     public static void main(String[] args) {
 
-        /* Inc/dec tests */
-        Point a = new Point(6, 6),
-              b = new Point(3, 3);
-        Point c = VectorEval.inc(a, b),
-              d = VectorEval.inc(b, a),
-              e = VectorEval.dec(a, b),
-              f = VectorEval.dec(b, a);
-        System.out.println(c);
-        System.out.println(d);
-        System.out.println(e);
-        System.out.println(f);
-
-        
-        
+        /* Hash tests - key must return to its old value after undo */
+        VectorEval ve = new VectorEval();
+        ve.move(9, 9, GameRules.BLACK);
+        long h = ve.hash();
+        ve.move(10, 10, GameRules.WHITE);
+        ve.move(9, 10, GameRules.BLACK);
+        ve.undo();
+        ve.undo();
+        System.out.println(h == ve.hash());
+
+        /* Join/split tests - evaluation must return to its old value after
+         * a move joining two lines is undone
+         */
+        ve = new VectorEval();
+        ve.move(5, 5, GameRules.BLACK);
+        ve.move(5, 7, GameRules.BLACK);
+        ve.move(7, 7, GameRules.BLACK);
+        ve.move(3, 3, GameRules.BLACK);
+        EvalState.MoveList before = new EvalState.MoveList(), after = new EvalState.MoveList();
+        ve.listMoves(before);
+        ve.move(5, 6, GameRules.BLACK);
+        ve.move(4, 4, GameRules.BLACK);
+        ve.move(6, 6, GameRules.BLACK);
+        ve.undo();
+        ve.undo();
+        ve.undo();
+        ve.listMoves(after);
+        boolean same = before.size() == after.size();
+        for (int i = 0; same && i < before.size(); i++)
+            same = before.move(i) == after.move(i) && before.value(i) == after.value(i);
+        System.out.println(same);
+
+        /* Defaults test - the default line values must be the ones used
+         * before they could be set: power 3, and 1/4 for half-open lines
+         */
+        VectorEval byDefault = new VectorEval(), old = new VectorEval(3, 0.25);
+        Random moves = new Random(1);
+        same = true;
+        for (int i = 0; i < 40 && same; i++) {
+            int x, y;
+            do {
+                x = 4 + moves.nextInt(11);
+                y = 4 + moves.nextInt(11);
+            } while (!byDefault.isEmpty(x, y));
+            byDefault.move(x, y, i % 2 == 0 ? GameRules.BLACK : GameRules.WHITE);
+            old.move(x, y, i % 2 == 0 ? GameRules.BLACK : GameRules.WHITE);
+            byDefault.listMoves(before);
+            old.listMoves(after);
+            same = byDefault.evaluate() == old.evaluate() && before.size() == after.size();
+            for (int j = 0; same && j < before.size(); j++)
+                same = before.move(j) == after.move(j) && before.value(j) == after.value(j);
+        }
+        System.out.println(same);
+
+        /* Allocation test - making, evaluating and undoing moves must not
+         * allocate once warmed up
+         */
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        Random rng = new Random(0);
+        EvalState.MoveList ml = new EvalState.MoveList();
+        ve = new VectorEval();
+        for (int i = 0; i < 20; i++) {
+            int x, y;
+            do {
+                x = 4 + rng.nextInt(11);
+                y = 4 + rng.nextInt(11);
+            } while (!ve.isEmpty(x, y));
+            ve.move(x, y, i % 2 == 0 ? GameRules.BLACK : GameRules.WHITE);
+        }
+        int ops = 0;
+        long bytes = 0;
+        for (int round = 0; round < 2; round++) {
+            ops = 0;
+            long st = mx.getThreadAllocatedBytes(id);
+            for (int n = 0; n < 100000; n++) {
+                ve.evaluate();
+                ve.listMoves(ml);
+                int x = ml.x(n % ml.size()), y = ml.y(n % ml.size());
+                ve.move(x, y, GameRules.WHITE);
+                ve.evaluate();
+                ve.listMoves(ml);
+                ve.move(ml.x(0), ml.y(0), GameRules.BLACK);
+                ve.evaluate();
+                ve.undo();
+                ve.undo();
+                ops++;
+            }
+            bytes = mx.getThreadAllocatedBytes(id) - st;                        // First round warms up
+        }
+        System.out.println("Allocated: " + (double) bytes / ops + " bytes / op");
+
     }
 
 }
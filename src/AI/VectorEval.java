@@ -1,12 +1,18 @@
 /*
  * VectorEval: Evaluator that keeps track of game state through set(s) of
  * "vectors", i.e. connected lines of stones.
+ *
+ * Points are packed into ints (x * 19 + y) and vectors are records in
+ * parallel arrays, recycled through a free list, so that making, undoing and
+ * evaluating moves allocates nothing. The evaluation and the move scores are
+ * kept up to date as moves are made: only the vectors ending next to the
+ * point played are taken out and put back in.
  */
 
 package AI;
 
-import Main.MainPanel;
-import java.awt.Point;
+import Main.BitBoard;
+import Main.GameRules;
 import java.util.*;
 
 /**
@@ -22,126 +28,197 @@ class VectorEval extends EvalState {
     private static final Random RNG;
     static final long SEED;
 
+    private static final int NONE = -1;
+    private static final int POINTS = 19 * 19;
+    private static final int VECTORS = 4 * POINTS;                             // One per stone and direction
+    private static final int JOURNAL = 64;                                     // Entries per move, at most
+
+    // Packed offset of one step along each direction in GameRules.DIR
+    private static final int[] STEP = new int[4];
+
+    // Neighbouring point by point and direction, NONE if off the board
+    private static final int[] FORWARD = new int[POINTS * 4];
+    private static final int[] BACKWARD = new int[POINTS * 4];
+
+    // Value of a vector (or of the move extending it) by length: 1 / (5 -
+    // length)^POWER if open at both ends, HALF_OPEN times that at one
+    static final double POWER = 3;
+    static final double HALF_OPEN = 0.25;
+
+    private static final long NOISE;                                           // Salt for noise()
+    private final double[] open, halfOpen;                                     // Values, by length
+
     // Game state information
-    private Vector[][][] vecArray = new Vector[19][19][4];
-    private LinkedList<Vector> vecList = new LinkedList<Vector>();
-    private LinkedList<Point> pastMoves = new LinkedList<Point>();
+    private int[] vecArray = new int[POINTS * 4];                              // Vector by point and direction
+    private int[] pastMoves = new int[POINTS];
+    private int moveCount = 0;
+    private BitBoard stones = new BitBoard();
+    private long hash = 0;          // Zobrist key, kept up to date by move/undo
+    private final Symmetry symmetry = new Symmetry();                          // Keys of the images, likewise
+
+    // Vectors: a is backwards of b, forwards being the directions in GameRules.DIR
+    private int[] vecPlayer = new int[VECTORS];
+    private int[] vecDir = new int[VECTORS];
+    private int[] vecA = new int[VECTORS];
+    private int[] vecB = new int[VECTORS];
+    private int[] vecList = new int[VECTORS];                                  // Vectors in use
+    private int[] vecIndex = new int[VECTORS];                                 // Position in vecList
+    private int vecCount = 0;
+    private int[] free = new int[VECTORS];                                     // Vectors not in use
+    private int freeCount = 0;
+
+    // Evaluation: finite part, and number of lines of five for each player
+    private double evaluation = 0;
+    private int wins = 0, losses = 0;
+    private int firstFive = -1;                                                 // Move making the first, if any
+
+    // Move scores: finite part, and number of vector ends / winning ends at
+    // each point. Points with any vector end are the candidate moves
+    private double[] board = new double[POINTS];
+    private int[] ends = new int[POINTS];
+    private int[] winEnds = new int[POINTS];
+    private long[] candidates = new long[(POINTS + 63) / 64];
+
+    // Undo journal: sums are restored rather than recomputed, so that undo
+    // gives back exactly the values before the move
+    private double[] pastEval = new double[POINTS];
+    private int[] pastJournal = new int[POINTS];
+    private int[] journalPoint = new int[(POINTS + 1) * JOURNAL];
+    private double[] journalValue = new double[(POINTS + 1) * JOURNAL];
+    private int journalSize = 0;
 
     // Utility variables
-    private boolean utd = false;    // Track whether evaluation is up to date or not
-    private double evaluation;
-    private LinkedList<Move> moves;
-    private double[][] board = new double[19][19];
+    private boolean utd = false;    // Track whether move list is up to date or not
+    private MoveList moves = new MoveList();
 
     static {
         SEED = new Random().nextLong();
 //        SEED = -6895470983183486479l;
         RNG = new Random(SEED);
+        NOISE = RNG.nextLong();
+        for (int dir = 0; dir < 4; dir++)
+            STEP[dir] = GameRules.DIR[dir][0] * 19 + GameRules.DIR[dir][1];
+        for (int x = 0; x < 19; x++)
+            for (int y = 0; y < 19; y++)
+                for (int dir = 0; dir < 4; dir++) {
+                    int x1 = x + GameRules.DIR[dir][0], y1 = y + GameRules.DIR[dir][1],
+                        x2 = x - GameRules.DIR[dir][0], y2 = y - GameRules.DIR[dir][1];
+                    FORWARD[(x * 19 + y) * 4 + dir] = GameRules.inBoard(x1, y1) ? x1 * 19 + y1 : NONE;
+                    BACKWARD[(x * 19 + y) * 4 + dir] = GameRules.inBoard(x2, y2) ? x2 * 19 + y2 : NONE;
+                }
+    }
+
+    public VectorEval() {
+        this(POWER, HALF_OPEN);
+    }
+
+    /* Create with other values of lines, for tuning - both must be
+     * positive, or a five would not be infinite, or a sum would be NaN
+     */
+    VectorEval(double power, double halfOpenValue) {
+        this(new double[6], new double[6]);
+        if (!(power > 0) || !(halfOpenValue > 0))
+            throw new IllegalArgumentException("Line values need a positive power and half-open factor, not "
+                                               + power + " and " + halfOpenValue);
+        for (int length = 1; length <= 5; length++) {
+            open[length] = 1.0 / Math.pow(5 - length, power);
+            halfOpen[length] = halfOpenValue / Math.pow(5 - length, power);
+        }
+    }
+
+    private VectorEval(double[] open, double[] halfOpen) {
+        this.open = open;
+        this.halfOpen = halfOpen;
+        Arrays.fill(vecArray, NONE);
+        for (int v = VECTORS - 1; v >= 0; v--)
+            free[freeCount++] = v;
+    }
+
+    /* Produce an independent copy of the state, by replaying the moves */
+    public VectorEval copy() {
+        VectorEval ve = new VectorEval(open, halfOpen);
+        for (int i = 0; i < moveCount; i++) {
+            int p = pastMoves[i];
+            ve.move(p / 19, p % 19, stones.get(p / 19, p % 19));
+        }
+        return ve;
     }
 
     public void printVectors(int minLength) {
-        Iterator<Vector> it = vecList.iterator();
-        while (it.hasNext()) {
-            Vector v = it.next();
-            if (v.length() >= minLength)
-                v.print();
+        for (int i = 0; i < vecCount; i++) {
+            int v = vecList[i];
+            if (length(v) >= minLength)
+                System.out.println(vecPlayer[v] + ": (" + vecA[v] / 19 + "," + vecA[v] % 19 + ") to ("
+                                   + vecB[v] / 19 + "," + vecB[v] % 19 + ")");
         }
     }
 
     /* Produce a global evaluation of the game state */
     public double evaluate() {
-        if (!utd)
-            update();
-        return evaluation * (1 + (RNG.nextGaussian() - 0.5) / 0.5 * RAND_WINDOW);
+        return plainEvaluate() * (1 + 2 * RAND_WINDOW * noise(symmetry.canonical(hash)));
+    }
+
+    /* The evaluation without its noise, the same in every run */
+    double plainEvaluate() {
+        if (firstFive >= 0) {                                                   // Later fives don't count
+            int p = pastMoves[firstFive];
+            return stones.get(p / 19, p % 19) * Double.POSITIVE_INFINITY;
+        }
+        return evaluation;
+    }
+
+    /* Random number in [-1, 1) that is fixed for a position (for a run), so
+     * that a position searched twice, or by two threads, gets the same value.
+     * It is keyed like the transposition table, so that images of a position
+     * sharing an entry also share a value
+     */
+    private static double noise(long hash) {
+        long h = (hash ^ NOISE) * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 29;
+        h *= 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 32;
+        return (h >>> 11) * 0x1.0p-52 - 1;
+    }
+
+    /* Produce the Zobrist key of the current position */
+    public long hash() {
+        return hash;
     }
 
     /* Produce list of moves to expand */
-    public LinkedList<Move> listMoves() {
+    public void listMoves(MoveList list) {
         if (!utd)
             update();
-        return moves;
+        list.copy(moves);
     }
 
+    /* Rebuild the move list from the candidate points */
     private void update() {
 
-        evaluation = 0;
-        moves = new LinkedList<Move>();
-        for (int i = 0; i < 19; i++)
-            for (int j = 0; j < 19; j++)
-                board[i][j] = 0;
-
-        // Loop through list of vectors
-        Iterator<Vector> it = vecList.iterator();
-        while (it.hasNext()) {
-
-            Vector v = it.next();
-
-            // Get open spaces past endpoints of vector
-            Point a, b;
-            if (v.a.equals(v.b)) {
-                a = new Point(v.a.x + MainPanel.DIR[v.dir][0], v.a.y + MainPanel.DIR[v.dir][1]);
-                b = new Point(v.a.x - MainPanel.DIR[v.dir][0], v.a.y - MainPanel.DIR[v.dir][1]);
-            } else {
-                a = dec(v.a, v.b);
-                b = dec(v.b, v.a);
-            }
-            if (!MainPanel.inBoard(a.x, a.y) || !isEmpty(a.x, a.y))
-                a = null;
-            if (!MainPanel.inBoard(b.x, b.y) || !isEmpty(b.x, b.y))
-                b = null;
-
-            // Both open
-            if (a != null && b != null) {
-                double eval = evalMove(v.length() + 1, true);
-                board[a.x][a.y] += eval;
-                board[b.x][b.y] += eval;
-                evaluation += v.player * evalMove(v.length(), true);
-            // One open
-            } else if (a != null) {
-                board[a.x][a.y] += evalMove(v.length() + 1, false);
-                evaluation += v.player * evalMove(v.length(), false);
-            } else if (b != null) {
-                board[b.x][b.y] += evalMove(v.length() + 1, false);
-                evaluation += v.player * evalMove(v.length(), false);
-            } else if (v.length() >= 5)
-                evaluation += v.player * Double.POSITIVE_INFINITY;
-
-        }
+        moves.clear();
 
         // List moves
         double tval = 0;
-        for (int i = 0; i < 19; i++)
-            for (int j = 0; j < 19; j++) {
-                if (board[i][j] != 0 && (moves.size() < MOVE_LIM || board[i][j] >= tval / moves.size() * (1 - MOVE_WINDOW))) {
-                    Move m = new Move(new Point(i, j), board[i][j]);
-                    if (moves.isEmpty() || board[i][j] >= moves.getFirst().value)
-                        moves.addFirst(m);
+        for (int w = 0; w < candidates.length; w++)
+            for (long bits = candidates[w]; bits != 0; bits &= bits - 1) {
+                int p = w * 64 + Long.numberOfTrailingZeros(bits);
+                double score = score(p);
+                if (moves.size() < MOVE_LIM || score >= tval / moves.size() * (1 - MOVE_WINDOW)) {
+                    if (moves.size() == 0 || score >= moves.value(0))
+                        moves.addFirst(p, score);
                     else
-                        moves.addLast(m);
-                    tval += board[i][j];
+                        moves.addLast(p, score);
+                    tval += score;
                 }
             }
 
-        // Insert random move if first move
-        if (RNG.nextGaussian() >= pastMoves.size()) {
-            int rx, ry;
-            do {
-                rx = 9 + (int)(RNG.nextGaussian() * 9);
-                ry = 9 + (int)(RNG.nextGaussian() * 9);
-            } while (!isEmpty(rx, ry));
-            moves.addFirst(new Move(new Point(rx, ry), 0));
-        }
-
         utd = true;
 
     }
 
-    /* Evaluate a move extending a vector of given length */
-    private double evalMove(int length, boolean open) {
-        if (length > 5)
-            length = 5;
-        double factor = open ? 1.0 : 0.25;
-        return factor / Math.pow(5 - length, 3);
+    /* Score of a move at point p */
+    private double score(int p) {
+        return winEnds[p] > 0 ? Double.POSITIVE_INFINITY : board[p];
     }
 
     /* Modify state by adding a move */
@@ -151,52 +228,58 @@ class VectorEval extends EvalState {
 
         if (isEmpty(x, y)) {
 
-            Point p = new Point(x, y);
-            pastMoves.addFirst(p);
+            int p = x * 19 + y;
+            pastEval[moveCount] = evaluation;
+            pastJournal[moveCount] = journalSize;
+            pastMoves[moveCount++] = p;
+
+            // Take out the vectors ending next to p, whose ends change
+            for (int dir = 0; dir < 4; dir++) {
+                contribute(vectorAt(FORWARD[p * 4 + dir], dir, 0), -1);
+                contribute(vectorAt(BACKWARD[p * 4 + dir], dir, 0), -1);
+            }
+
+            stones.set(x, y, player);
+            hash ^= Zobrist.key(player, x, y);
+            symmetry.move(p, player);
 
             // Loop through directions
             for (int dir = 0; dir < 4; dir++) {
 
                 // Look for vectors in adjacent squares along direction of same player
-                Vector v1 = null, v2 = null;    // v1 forwards, v2 backwards
-                int x1 = x + MainPanel.DIR[dir][0], y1 = y + MainPanel.DIR[dir][1],
-                    x2 = x - MainPanel.DIR[dir][0], y2 = y - MainPanel.DIR[dir][1];
-                if (MainPanel.inBoard(x1, y1))
-                    v1 = vecArray[x1][y1][dir];
-                if (MainPanel.inBoard(x2, y2))
-                    v2 = vecArray[x2][y2][dir];
-                if (v1 != null && v1.player != player)
-                    v1 = null;
-                if (v2 != null && v2.player != player)
-                    v2 = null;
+                int v1 = vectorAt(FORWARD[p * 4 + dir], dir, player),
+                    v2 = vectorAt(BACKWARD[p * 4 + dir], dir, player);
 
                 // Both directions empty - create new vector
-                if (v1 == null && v2 == null) {
-                    Vector v = new Vector(p, dir, player);
-                    vecArray[x][y][dir] = v;
-                    vecList.add(v);
+                if (v1 == NONE && v2 == NONE) {
+                    vecArray[p * 4 + dir] = create(p, p, dir, player);
 
                 // One direction empty - stretch the other
-                } else if (v1 == null) {
-                    v2.stretch(p, Vector.FORWARDS);
-                    vecArray[x][y][dir] = v2;
-                } else if (v2 == null) {
-                    v1.stretch(p, Vector.BACKWARDS);
-                    vecArray[x][y][dir] = v1;
-
-                // Both directions have vector - join
+                } else if (v1 == NONE) {
+                    vecB[v2] = p;
+                    vecArray[p * 4 + dir] = v2;
+                } else if (v2 == NONE) {
+                    vecA[v1] = p;
+                    vecArray[p * 4 + dir] = v1;
+
+                // Both directions have vector - join, into the backwards one
                 } else {
-                    Vector v = Vector.join(v2, v1);
-                    for (Point pi = v.a; !pi.equals(v.b); pi = inc(pi, v.b))
-                        vecArray[pi.x][pi.y][dir] = v;
-                    vecArray[v.b.x][v.b.y][dir] = v;
-                    vecList.remove(v1);
-                    vecList.remove(v2);
-                    vecList.add(v);
+                    vecB[v2] = vecB[v1];
+                    vecArray[p * 4 + dir] = v2;
+                    assign(v2, p + STEP[dir], vecB[v2]);
+                    destroy(v1);
                 }
 
+                // Put back the vector through p and the opponent's
+                contribute(vecArray[p * 4 + dir], 1);
+                contribute(vectorAt(FORWARD[p * 4 + dir], dir, -player), 1);
+                contribute(vectorAt(BACKWARD[p * 4 + dir], dir, -player), 1);
+
             }
 
+            if (firstFive < 0 && (wins > 0 || losses > 0))
+                firstFive = moveCount - 1;
+
         }
 
     }
@@ -205,153 +288,170 @@ class VectorEval extends EvalState {
     public void undo() {
 
         utd = false;
-        Point p = pastMoves.removeFirst();
+        int p = pastMoves[--moveCount], x = p / 19, y = p % 19;
+        int player = stones.get(x, y);
+        if (firstFive == moveCount)
+            firstFive = -1;
+
+        // Take out the vector through p and the opponent's
+        for (int dir = 0; dir < 4; dir++) {
+            contribute(vecArray[p * 4 + dir], -1);
+            contribute(vectorAt(FORWARD[p * 4 + dir], dir, -player), -1);
+            contribute(vectorAt(BACKWARD[p * 4 + dir], dir, -player), -1);
+        }
+
+        hash ^= Zobrist.key(player, x, y);
+        symmetry.undo(p, player);
+        stones.clear(x, y);
 
         // Loop through directions
         for (int dir = 0; dir < 4; dir++) {
 
-            Vector v = vecArray[p.x][p.y][dir];
-            vecArray[p.x][p.y][dir] = null;
+            int v = vecArray[p * 4 + dir];
+            vecArray[p * 4 + dir] = NONE;
 
             // Look for vectors in adjacent squares along direction of same player
-            Vector v1 = null, v2 = null;
-            int x1 = p.x + MainPanel.DIR[dir][0], y1 = p.y + MainPanel.DIR[dir][1],
-                x2 = p.x - MainPanel.DIR[dir][0], y2 = p.y - MainPanel.DIR[dir][1];
-            if (MainPanel.inBoard(x1, y1))
-                v1 = vecArray[x1][y1][dir];
-            if (MainPanel.inBoard(x2, y2))
-                v2 = vecArray[x2][y2][dir];
-            if (v1 != null && v1.player != v.player)
-                v1 = null;
-            if (v2 != null && v2.player != v.player)
-                v2 = null;
+            int v1 = vectorAt(FORWARD[p * 4 + dir], dir, player),
+                v2 = vectorAt(BACKWARD[p * 4 + dir], dir, player);
 
             // Both directions empty - remove point vector
-            if (v1 == null && v2 == null) {
-                vecList.remove(v);
+            if (v1 == NONE && v2 == NONE) {
+                destroy(v);
 
             // One direction empty - shrink the other
-            } else if (v1 == null) {
-                v.shrink(p, Vector.FORWARDS);
-            } else if (v2 == null) {
-                v.shrink(p, Vector.BACKWARDS);
+            } else if (v1 == NONE) {
+                vecB[v] = p - STEP[dir];
+            } else if (v2 == NONE) {
+                vecA[v] = p + STEP[dir];
 
-            // Both directions have vector - split the vector
+            // Both directions have vector - split the vector, keeping the
+            // backwards part
             } else {
-                v1 = new Vector(v.a, p, dir, v.player);
-                v2 = new Vector(p, v.b, dir, v.player);
-                v1.shrink(p, Vector.FORWARDS);
-                v2.shrink(p, Vector.BACKWARDS);
-                for (Point pi = v1.a; !pi.equals(v1.b); pi = inc(pi, v1.b))
-                    vecArray[pi.x][pi.y][dir] = v1;
-                vecArray[v1.b.x][v1.b.y][dir] = v1;
-                for (Point pi = v2.a; !pi.equals(v2.b); pi = inc(pi, v2.b))
-                    vecArray[pi.x][pi.y][dir] = v2;
-                vecArray[v2.b.x][v2.b.y][dir] = v2;
-                vecList.remove(v);
-                vecList.add(v1);
-                vecList.add(v2);
+                int w = create(p + STEP[dir], vecB[v], dir, player);
+                vecB[v] = p - STEP[dir];
+                assign(w, vecA[w], vecB[w]);
             }
 
         }
 
-    }
-
-    /* Checks if the given point is empty */
-    public boolean isEmpty(int x, int y) {
-        if (!MainPanel.inBoard(x, y))
-            return false;
-        else
-            for (int i = 0; i < 4; i++)
-                if (vecArray[x][y][i] != null)
-                    return false;
-        return true;
-    }
+        // Put back the vectors ending next to p
+        for (int dir = 0; dir < 4; dir++) {
+            contribute(vectorAt(FORWARD[p * 4 + dir], dir, 0), 1);
+            contribute(vectorAt(BACKWARD[p * 4 + dir], dir, 0), 1);
+        }
 
-    /* Increment a towards b by 1 */
-    protected static Point inc(Point a, Point b) {
-        int x = a.x,
-            y = a.y;
-        if (b.x - a.x != 0)
-            x += (b.x - a.x) / Math.abs(b.x - a.x);
-        if (b.y - a.y != 0)
-            y += (b.y - a.y) / Math.abs(b.y - a.y);
-        return new Point(x, y);
-    }
+        // Restore the sums from before the move, latest change first
+        for (int j = journalSize - 1; j >= pastJournal[moveCount]; j--)
+            board[journalPoint[j]] = journalValue[j];
+        journalSize = pastJournal[moveCount];
+        evaluation = pastEval[moveCount];
 
-    /* Increment a away from b by 1 */
-    protected static Point dec(Point a, Point b) {
-        int x = a.x,
-            y = a.y;
-        if (b.x - a.x != 0)
-            x -= (b.x - a.x) / Math.abs(b.x - a.x);
-        if (b.y - a.y != 0)
-            y -= (b.y - a.y) / Math.abs(b.y - a.y);
-        return new Point(x, y);
     }
 
-    /* A representation for a connected line of stones */
-    private static class Vector {
-
-        /* Definition: forwards implies in the positive directions defined in
-         * MainPanel; backwards implies in the negative directions
-         */
-        public static final int FORWARDS = 1;
-        public static final int BACKWARDS = -1;
+    /* Add (sign 1) or remove (sign -1) the evaluation of a vector and its
+     * score at the open points past its ends
+     */
+    private void contribute(int v, int sign) {
+
+        if (v == NONE)
+            return;
+
+        // Get open spaces past endpoints of vector
+        int a = BACKWARD[vecA[v] * 4 + vecDir[v]],
+            b = FORWARD[vecB[v] * 4 + vecDir[v]],
+            length = Math.min(length(v), 5);
+        if (a != NONE && !stones.isEmpty(a / 19, a % 19))
+            a = NONE;
+        if (b != NONE && !stones.isEmpty(b / 19, b % 19))
+            b = NONE;
+
+        // Both open
+        if (a != NONE && b != NONE) {
+            addScore(a, sign, open[Math.min(length + 1, 5)]);
+            addScore(b, sign, open[Math.min(length + 1, 5)]);
+            addEval(vecPlayer[v], sign, open[length]);
+        // One open
+        } else if (a != NONE) {
+            addScore(a, sign, halfOpen[Math.min(length + 1, 5)]);
+            addEval(vecPlayer[v], sign, halfOpen[length]);
+        } else if (b != NONE) {
+            addScore(b, sign, halfOpen[Math.min(length + 1, 5)]);
+            addEval(vecPlayer[v], sign, halfOpen[length]);
+        } else if (length >= 5)
+            addEval(vecPlayer[v], sign, Double.POSITIVE_INFINITY);
 
-        public int player;
-        public int dir;
-        public Point a, b;  // a is backwards of b
-
-        public Vector(Point p, int dir, int player) {
-            a = b = p;
-            this.dir = dir;
-            this.player = player;
-        }
+    }
 
-        public Vector(Point a, Point b, int dir, int player) {
-            this.a = a;
-            this.b = b;
-            this.dir = dir;
-            this.player = player;
-        }
+    /* Add (sign 1) or remove (sign -1) the value of a line of the given player */
+    private void addEval(int player, int sign, double value) {
+        if (Double.isInfinite(value)) {
+            if (player > 0)
+                wins += sign;
+            else
+                losses += sign;
+        } else
+            evaluation += player * sign * value;
+    }
 
-        /* Set given endpoint to p */
-        public void stretch(Point p, int dir) {
-            if (dir == FORWARDS)
-                b = p;
-            else if (dir == BACKWARDS)
-                a = p;
-        }
+    /* Add (sign 1) or remove (sign -1) a value from the score of point p */
+    private void addScore(int p, int sign, double value) {
+        journalPoint[journalSize] = p;
+        journalValue[journalSize++] = board[p];
+        ends[p] += sign;
+        if (Double.isInfinite(value))
+            winEnds[p] += sign;
+        else
+            board[p] += sign * value;
+        if (ends[p] == 0) {
+            board[p] = 0;
+            candidates[p >>> 6] &= ~(1L << p);
+        } else
+            candidates[p >>> 6] |= 1L << p;
+    }
 
-        /* Modify endpoints to exclude given point p - assumes p is in vector */
-        public void shrink(Point p, int dir) {
-            if (dir == FORWARDS)
-                b = inc(p, a);
-            else if (dir == BACKWARDS)
-                a = inc(p, b);
-        }
+    /* Checks if the given point is empty */
+    public boolean isEmpty(int x, int y) {
+        return GameRules.inBoard(x, y) && stones.isEmpty(x, y);
+    }
 
-        public int length() {
-            return distance(a, b) + 1;
-        }
+    /* Vector through p along dir of the given player (0 for either), or NONE */
+    private int vectorAt(int p, int dir, int player) {
+        if (p == NONE)
+            return NONE;
+        int v = vecArray[p * 4 + dir];
+        return v != NONE && (player == 0 || vecPlayer[v] == player) ? v : NONE;
+    }
 
-        public void print() {
-            System.out.println(player + ": (" + a.x + "," + a.y + ") to (" + b.x + "," + b.y + ")");
-        }
+    /* Number of stones in a vector */
+    private int length(int v) {
+        return (vecB[v] - vecA[v]) / STEP[vecDir[v]] + 1;
+    }
 
-        /* Create a new vector containing the given two vectors - assuming
-         * collinear, order of endpoints, same player, etc.
-         * Note: v1 must be backwards of v2
-         */
-        public static Vector join(Vector v1, Vector v2) {
-            return new Vector(v1.a, v2.b, v1.dir, v1.player);
-        }
+    /* Point every stone from a to b (inclusive) at vector v */
+    private void assign(int v, int a, int b) {
+        int step = STEP[vecDir[v]], dir = vecDir[v];
+        for (int p = a; p != b + step; p += step)
+            vecArray[p * 4 + dir] = v;
+    }
 
-        public static int distance(Point a, Point b) {
-            return Math.max(Math.abs(a.x - b.x), Math.abs(a.y - b.y));
-        }
+    /* Take a vector from the free list */
+    private int create(int a, int b, int dir, int player) {
+        int v = free[--freeCount];
+        vecA[v] = a;
+        vecB[v] = b;
+        vecDir[v] = dir;
+        vecPlayer[v] = player;
+        vecIndex[v] = vecCount;
+        vecList[vecCount++] = v;
+        return v;
+    }
 
+    /* Return a vector to the free list */
+    private void destroy(int v) {
+        int last = vecList[--vecCount];
+        vecList[vecIndex[v]] = last;
+        vecIndex[last] = vecIndex[v];
+        free[freeCount++] = v;
     }
 
 }
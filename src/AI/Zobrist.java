@@ -0,0 +1,55 @@
+/*
+ * Zobrist: Random 64-bit keys for each (player, point) pair. The key of a
+ * position is the XOR of the keys of its stones, so it can be kept up to date
+ * by XORing in a single key on every move and XORing it out again on undo.
+ */
+
+package AI;
+
+import Main.BitBoard;
+import Main.GameRules;
+import java.util.Random;
+
+/**
+ *
+ * @author samuel
+ */
+class Zobrist {
+
+    // Fixed seed, so that keys are the same from one run to the next
+    private static final long SEED = 0x5DEECE66DL;
+
+    private static final long[] BLACK_KEYS = new long[19 * 19];
+    private static final long[] WHITE_KEYS = new long[19 * 19];
+
+    static {
+        Random rng = new Random(SEED);
+        for (int i = 0; i < 19 * 19; i++) {
+            BLACK_KEYS[i] = rng.nextLong();
+            WHITE_KEYS[i] = rng.nextLong();
+        }
+    }
+
+    private Zobrist() {}
+
+    /* Key for a stone of the given player on the given point */
+    static long key(int player, int x, int y) {
+        return player == GameRules.BLACK ? BLACK_KEYS[x * 19 + y] : WHITE_KEYS[x * 19 + y];
+    }
+
+    /* Key for a stone of the given player on the given packed point */
+    static long key(int player, int p) {
+        return player == GameRules.BLACK ? BLACK_KEYS[p] : WHITE_KEYS[p];
+    }
+
+    /* Key of a whole board, computed from scratch */
+    static long key(BitBoard board) {
+        long key = 0;
+        for (int i = 0; i < 19; i++)
+            for (int j = 0; j < 19; j++)
+                if (!board.isEmpty(i, j))
+                    key ^= key(board.get(i, j), i, j);
+        return key;
+    }
+
+}
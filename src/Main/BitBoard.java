@@ -0,0 +1,168 @@
+/*
+ * BitBoard: Board position storing each player's stones as a bit set, one bit
+ * per point, laid out row by row with one padding column after every row so
+ * that shifting a whole set along any of the directions in GameRules.DIR never
+ * wraps a line from one row into the next. Lines of stones are then found for
+ * all points at once by shifting and ANDing the sets.
+ */
+
+package Main;
+
+/**
+ *
+ * @author samuel
+ */
+public class BitBoard {
+
+    private static final int SIZE = 19;
+    private static final int WIDTH = SIZE + 1;                                  // Row width incl. padding
+    private static final int BITS = SIZE * WIDTH;
+    private static final int WORDS = (BITS + 63) / 64;
+
+    // Index offset of one step along each direction in GameRules.DIR
+    private static final int[] STEP = {WIDTH, 1, WIDTH + 1, WIDTH - 1};
+
+    // Mask of the bits that are real points (excludes padding and spare bits)
+    private static final long[] POINTS = new long[WORDS];
+
+    static {
+        for (int x = 0; x < SIZE; x++)
+            for (int y = 0; y < SIZE; y++)
+                POINTS[index(x, y) >>> 6] |= 1L << index(x, y);
+    }
+
+    private final long[] black = new long[WORDS];
+    private final long[] white = new long[WORDS];
+    private int stones = 0;
+
+    // Scratch sets for the line scans
+    private final long[] run = new long[WORDS];
+    private final long[] tmp = new long[WORDS];
+    private final long[] empty = new long[WORDS];
+
+    /* Bit index of a point */
+    private static int index(int x, int y) {
+        return x * WIDTH + y;
+    }
+
+    /* Stone on the given point, or GameRules.EMPTY */
+    public int get(int x, int y) {
+        int i = index(x, y);
+        long bit = 1L << i;
+        if ((black[i >>> 6] & bit) != 0)
+            return GameRules.BLACK;
+        else if ((white[i >>> 6] & bit) != 0)
+            return GameRules.WHITE;
+        else
+            return GameRules.EMPTY;
+    }
+
+    /* Check if the given point is empty */
+    public boolean isEmpty(int x, int y) {
+        int i = index(x, y);
+        return ((black[i >>> 6] | white[i >>> 6]) & (1L << i)) == 0;
+    }
+
+    /* Put a stone of the given player on an empty point */
+    public void set(int x, int y, int player) {
+        int i = index(x, y);
+        stones(player)[i >>> 6] |= 1L << i;
+        stones++;
+    }
+
+    /* Remove the stone from the given point */
+    public void clear(int x, int y) {
+        int i = index(x, y);
+        if (!isEmpty(x, y)) {
+            black[i >>> 6] &= ~(1L << i);
+            white[i >>> 6] &= ~(1L << i);
+            stones--;
+        }
+    }
+
+    /* Remove all stones */
+    public void clear() {
+        for (int w = 0; w < WORDS; w++)
+            black[w] = white[w] = 0;
+        stones = 0;
+    }
+
+    /* Number of stones on the board */
+    public int stones() {
+        return stones;
+    }
+
+    /* Check if the given player has five (or more) in a row */
+    public boolean hasFive(int player) {
+        long[] s = stones(player);
+        for (int d = 0; d < 4; d++) {
+            runs(s, STEP[d]);
+            shiftDown(s, 4 * STEP[d], tmp);
+            if (and(run, tmp, run))
+                return true;
+        }
+        return false;
+    }
+
+    /* Check if the given player has an open four, i.e. four in a row with
+     * both ends empty
+     */
+    public boolean hasOpenFour(int player) {
+        long[] s = stones(player);
+        for (int w = 0; w < WORDS; w++)
+            empty[w] = ~(black[w] | white[w]) & POINTS[w];
+        for (int d = 0; d < 4; d++) {
+            runs(s, STEP[d]);
+            shiftUp(empty, STEP[d], tmp);                                       // Empty before run
+            if (!and(run, tmp, run))
+                continue;
+            shiftDown(empty, 4 * STEP[d], tmp);                                 // Empty after run
+            if (and(run, tmp, run))
+                return true;
+        }
+        return false;
+    }
+
+    private long[] stones(int player) {
+        return player == GameRules.BLACK ? black : white;
+    }
+
+    /* Set run to the points starting a run of four of s along the given step */
+    private void runs(long[] s, int step) {
+        shiftDown(s, step, tmp);
+        and(s, tmp, run);                                                       // Runs of two
+        shiftDown(run, 2 * step, tmp);
+        and(run, tmp, run);                                                     // Runs of four
+    }
+
+    /* dst = a & b - returns whether the result is non-empty */
+    private static boolean and(long[] a, long[] b, long[] dst) {
+        long any = 0;
+        for (int w = 0; w < WORDS; w++)
+            any |= dst[w] = a[w] & b[w];
+        return any != 0;
+    }
+
+    /* dst bit i = src bit i + n */
+    private static void shiftDown(long[] src, int n, long[] dst) {
+        int words = n >>> 6, bits = n & 63;
+        for (int w = 0; w < WORDS; w++) {
+            int i = w + words;
+            long lo = i < WORDS ? src[i] : 0,
+                 hi = i + 1 < WORDS ? src[i + 1] : 0;
+            dst[w] = bits == 0 ? lo : (lo >>> bits) | (hi << (64 - bits));
+        }
+    }
+
+    /* dst bit i = src bit i - n, restricted to real points */
+    private static void shiftUp(long[] src, int n, long[] dst) {
+        int words = n >>> 6, bits = n & 63;
+        for (int w = WORDS - 1; w >= 0; w--) {
+            int i = w - words;
+            long hi = i >= 0 ? src[i] : 0,
+                 lo = i - 1 >= 0 ? src[i - 1] : 0;
+            dst[w] = (bits == 0 ? hi : (hi << bits) | (lo >>> (64 - bits))) & POINTS[w];
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * GameRules: The rules of the game, i.e. legality of moves and detection of
+ * the winner. Keeps the length of every line of stones up to date as moves
+ * are played, stored at the two end stones of each line, so that only the
+ * four lines through the new stone are looked at and the result of a move
+ * is known in constant time.
+ */
+
+package Main;
+
+/**
+ *
+ * @author samuel
+ */
+public class GameRules {
+
+    // Board position constants
+    public static final int EMPTY = 0;
+    public static final int BLACK = 1;
+    public static final int WHITE = -BLACK;
+    public static final int[][] DIR = {{1, 0}, {0, 1}, {1, 1}, {1, -1}};
+
+    private final BitBoard board = new BitBoard();
+    private final int[][] length = new int[4][19 * 19];                         // By direction, at line ends
+    private int winner = EMPTY;
+
+    /* Check if the given move can be played */
+    public boolean isLegal(int x, int y) {
+        return winner == EMPTY && inBoard(x, y) && board.isEmpty(x, y);
+    }
+
+    /* Play a legal move - returns the winner after it, or EMPTY */
+    public int play(int x, int y, int player) {
+        board.set(x, y, player);
+
+        // Join the lines on either side of the stone in each direction
+        for (int d = 0; d < 4; d++) {
+            int dx = DIR[d][0], dy = DIR[d][1];
+            int back = lengthAt(x - dx, y - dy, d, player),
+                fwd = lengthAt(x + dx, y + dy, d, player),
+                len = back + 1 + fwd;
+            length[d][(x - back * dx) * 19 + (y - back * dy)] = len;
+            length[d][(x + fwd * dx) * 19 + (y + fwd * dy)] = len;
+            if (len >= 5)
+                winner = player;
+        }
+
+        return winner;
+    }
+
+    /* Take back the last move played, at the given point: the lines through
+     * it are split, their ends found by walking along them
+     */
+    public void undo(int x, int y) {
+        int player = board.get(x, y);
+        board.clear(x, y);
+        for (int d = 0; d < 4; d++) {
+            int dx = DIR[d][0], dy = DIR[d][1];
+            int back = run(x, y, -dx, -dy, player), fwd = run(x, y, dx, dy, player);
+            if (back > 0)
+                length[d][(x - back * dx) * 19 + (y - back * dy)] = length[d][(x - dx) * 19 + (y - dy)] = back;
+            if (fwd > 0)
+                length[d][(x + fwd * dx) * 19 + (y + fwd * dy)] = length[d][(x + dx) * 19 + (y + dy)] = fwd;
+        }
+        winner = EMPTY;                                                         // Nobody had won before it
+    }
+
+    /* Number of player's stones in a row from next to (x, y) along (dx, dy) */
+    private int run(int x, int y, int dx, int dy, int player) {
+        int n = 0;
+        while (inBoard(x + (n + 1) * dx, y + (n + 1) * dy) && board.get(x + (n + 1) * dx, y + (n + 1) * dy) == player)
+            n++;
+        return n;
+    }
+
+    /* Length of the line ending next to a new stone, if it belongs to player */
+    private int lengthAt(int x, int y, int d, int player) {
+        if (inBoard(x, y) && board.get(x, y) == player)
+            return length[d][x * 19 + y];
+        return 0;
+    }
+
+    /* Check if the given point is inside the board */
+    public static boolean inBoard(int x, int y) {
+        return x >= 0 && x < 19 && y >= 0 && y < 19;
+    }
+
+    /* Stone on the given point */
+    public int get(int x, int y) {
+        return board.get(x, y);
+    }
+
+    /* The winner so far, or EMPTY */
+    public int winner() {
+        return winner;
+    }
+
+    /* Check if the board is full, i.e. the game is drawn if nobody has won */
+    public boolean isFull() {
+        return board.stones() == 19 * 19;
+    }
+
+    /* The position itself */
+    public BitBoard board() {
+        return board;
+    }
+
+}
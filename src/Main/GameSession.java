@@ -0,0 +1,169 @@
+/*
+ * GameSession: One game between two players, with no interface of its own.
+ * Each side is either an engine, which the session asks for moves and tells
+ * the opponent's, or a player outside it (a person, another program), whose
+ * moves are passed to play(). A session is only its rules and two
+ * references, so that many games can be played side by side, e.g. engine
+ * against engine with no threads at all:
+ *
+ *     GameSession game = new GameSession(new StupidAI(), new StupidAI());
+ *     int winner = game.playOut();
+ */
+
+package Main;
+
+import AI.Engine;
+
+/**
+ *
+ * @author samuel
+ */
+public class GameSession {
+
+    public static final int NONE = -1;                                          // No move
+
+    private final GameRules game = new GameRules();
+    private final Engine[] engines = new Engine[2];                             // Black, white; null outside
+    private int turn = GameRules.BLACK;                                         // EMPTY once over
+    private int winner = GameRules.EMPTY;
+    private final int[] history = new int[19 * 19];                             // Moves in order, packed
+    private int moves;
+    private boolean untold;                                                     // Last move, by the opponent
+
+    /* Create with the engines of each side, or null for a side played from
+     * outside - each engine is told which side it plays
+     */
+    public GameSession(Engine black, Engine white) {
+        engines[0] = black;
+        engines[1] = white;
+        if (black != null)
+            black.setPlayer(GameRules.BLACK);
+        if (white != null)
+            white.setPlayer(GameRules.WHITE);
+    }
+
+    private static int side(int player) {
+        return player == GameRules.BLACK ? 0 : 1;
+    }
+
+    /* The engine of the given side, or null */
+    public Engine engine(int player) {
+        return engines[side(player)];
+    }
+
+    /* Check if the given move can be played by the side to move */
+    public boolean isLegal(int x, int y) {
+        return turn != GameRules.EMPTY && game.isLegal(x, y);
+    }
+
+    /* Play a legal move for the side to move, and tell the other side's
+     * engine, if any - returns the winner after it, or GameRules.EMPTY
+     */
+    public int play(int x, int y) {
+        int player = turn;
+        winner = game.play(x, y, player);
+        history[moves++] = x * 19 + y;
+        untold = winner != GameRules.EMPTY || game.isFull();
+        if (untold)
+            turn = GameRules.EMPTY;
+        else {
+            turn = -player;
+            Engine opponent = engines[side(turn)];
+            if (opponent != null)
+                opponent.opponentMoved(x, y);
+        }
+        return winner;
+    }
+
+    /* Put a stone of either side on the board out of turn, and on the
+     * engines', to set up a position - the other side is then to move
+     */
+    public void setUp(int x, int y, int player) {
+        winner = game.play(x, y, player);
+        history[moves++] = x * 19 + y;
+        untold = false;
+        turn = winner != GameRules.EMPTY || game.isFull() ? GameRules.EMPTY : -player;
+        for (Engine engine : engines)
+            if (engine != null)
+                engine.setUp(x, y, player);
+    }
+
+    /* Take back the last move, or stone set up, on the engines' boards too
+     * (but the opponent's, which was never told a move that ended the game)
+     * - its side is then to move. Returns false if there is none
+     */
+    public boolean takeBack() {
+        if (moves == 0)
+            return false;
+        int p = history[--moves], x = p / 19, y = p % 19, player = game.get(x, y);
+        game.undo(x, y);
+        winner = GameRules.EMPTY;
+        turn = player;
+        for (Engine engine : engines)
+            if (engine != null && !(untold && engine == engines[side(-player)]))
+                engine.takeBack(x, y);
+        untold = false;
+        return true;
+    }
+
+    /* Have the engine to move play - returns its move, packed. An illegal
+     * move loses the game
+     */
+    public int step() {
+        int player = turn, move = engines[side(player)].move();
+        if (move >= 0 && isLegal(move / 19, move % 19))
+            play(move / 19, move % 19);
+        else {
+            winner = -player;
+            turn = GameRules.EMPTY;
+        }
+        return move;
+    }
+
+    /* Have the engines play until the game is over, or a side without an
+     * engine is to move - returns the winner so far, or GameRules.EMPTY
+     */
+    public int playOut() {
+        while (turn != GameRules.EMPTY && engines[side(turn)] != null)
+            step();
+        return winner;
+    }
+
+    /* Signal end of game to the engines */
+    public void end() {
+        turn = GameRules.EMPTY;
+        for (Engine engine : engines)
+            if (engine != null)
+                engine.end();
+    }
+
+    /* Side to move, or GameRules.EMPTY once the game is over */
+    public int turn() {
+        return turn;
+    }
+
+    public boolean isOver() {
+        return turn == GameRules.EMPTY;
+    }
+
+    /* The winner, or GameRules.EMPTY */
+    public int winner() {
+        return winner;
+    }
+
+    /* Stone on the given point */
+    public int get(int x, int y) {
+        return game.get(x, y);
+    }
+
+    /* The last move, packed, or NONE */
+    public int lastMove() {
+        return moves == 0 ? NONE : history[moves - 1];
+    }
+
+    /* Number of moves played */
+    public int moves() {
+        return moves;
+    }
+
+}
@@ -75,7 +75,7 @@ public class MainFrame extends JFrame {
     /* Declare a winner */
     public void declareWinner(int winner) {
         // Create and display a dialog
-        String msg = winner == mainPanel.human ? "You won!" : "You lost.";
+        String msg = winner == GameRules.EMPTY ? "Draw." : winner == mainPanel.human ? "You won!" : "You lost.";
         JOptionPane.showMessageDialog(this, msg, "Game Over", JOptionPane.INFORMATION_MESSAGE);
     }
     
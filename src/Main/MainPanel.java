@@ -14,6 +14,7 @@ import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.*;
 import java.util.*;
+import java.util.function.IntConsumer;
 import javax.swing.*;
 
 /**
@@ -33,25 +34,29 @@ public class MainPanel extends JPanel {
     private static final Color highlight = new Color(255, 235, 0);
     private final MainFrame reference;
 
-    // Board position constants
-    public static final int EMPTY = 0;
-    public static final int BLACK = 1;
-    public static final int WHITE = -BLACK;
-    public static final int[][] DIR = {{1, 0}, {0, 1}, {1, 1}, {1, -1}};
-
     // Game state variables
-    public int[][] board = new int[19][19];
-    public int human = BLACK;
-    public int turn = BLACK;
-    public int lastX = -1, lastY = -1;
+    private GameSession session;
+    public int human = GameRules.BLACK;
 
     // AI
     private ABEvalAI ai;
     private Thread aiThread;
 
-    /* Initialize the AI */
+    /* Initialize the AI, on a thread of its own, and a game against it */
     public void initAI() {
-        ai = new ABEvalAI(this);
+        ai = new ABEvalAI();
+        ai.setBook(OpeningBook.standard());
+        ai.setSolved(SolvedCache.standard());
+        session = human == GameRules.BLACK ? new GameSession(null, ai) : new GameSession(ai, null);
+        ai.setOutput(new IntConsumer() {
+            public void accept(final int move) {
+                EventQueue.invokeLater(new Runnable() {
+                    public void run() {
+                        update(move / 19, move % 19, -human);
+                    }
+                });
+            }
+        });
         aiThread = new Thread(ai);
         aiThread.start();
     }
@@ -75,36 +80,22 @@ public class MainPanel extends JPanel {
 
     }
 
-    /* Update game state with move - would be best to have in separate thread,
-     * along with game state data; this should do for now, though
+    /* Update game state with move, on the event thread - the session hands
+     * the human's moves on to the AI, whose own come back here
      */
     public void update(int x, int y, int player) {
 
         // Check validity
-        if (turn == player && inBoard(x, y) && board[x][y] == EMPTY) {
+        if (session.turn() == player && session.isLegal(x, y)) {
 
-            // Lock and update
-            turn = EMPTY;
-            board[x][y] = player;
-            lastX = x;
-            lastY = y;
+            int status = session.play(x, y);
 
             // Check for end game conditions
-            int status = checkBoard();
-            if (status != EMPTY) {
+            if (session.isOver()) {
                 repaint();
-                ai.end();
-                aiThread.interrupt();
+                session.end();
                 reference.declareWinner(status);
                 restart();
-
-            // Roll over turn
-            } else {
-                turn = -player;
-                if (turn == human)
-                    ai.printDiagnostic();                                       // Diagnostic
-                else
-                    aiThread.interrupt();
             }
             repaint();
             
@@ -112,58 +103,10 @@ public class MainPanel extends JPanel {
 
     }
 
-    /* Check if the given point is inside the board */
-    public static boolean inBoard(int x, int y) {
-        return x >= 0 && x < 19 && y >= 0 && y < 19;
-    }
-
-    /* Check board for winner */
-    private int checkBoard() {
-        for (int i = 0; i < 19; i++) {
-            for (int j = 0; j < 19; j++) {
-                int p = checkPoint(i, j);
-                if (p != EMPTY)
-                    return p;
-            }
-        }
-        return EMPTY;
-    }
-
-    /* Check point for winner */
-    private int checkPoint(int x, int y) {
-        if (board[x][y] != EMPTY) {
-            int[][] dir = {{1, 0}, {0, 1}, {1, 1}, {1, -1}};
-            // Loop through directions
-            for (int i = 0; i < 4; i++) {
-                int num = 1;
-                int k = -1;
-                while ((x+k*dir[i][0] >= 0) && (x+k*dir[i][0] < 19) &&
-                       (y+k*dir[i][1] >= 0) && (y+k*dir[i][1] < 19) &&
-                       (board[x+k*dir[i][0]][y+k*dir[i][1]] == board[x][y])) {
-                    num++;
-                    k--;
-                }
-                k = 1;
-                while ((x+k*dir[i][0] >= 0) && (x+k*dir[i][0] < 19) &&
-                       (y+k*dir[i][1] >= 0) && (y+k*dir[i][1] < 19) &&
-                       (board[x+k*dir[i][0]][y+k*dir[i][1]] == board[x][y])) {
-                    num++;
-                    k++;
-                }
-                if (num >= 5)
-                    return board[x][y];
-            }
-        }
-        return EMPTY;
-    }
-
-    /* Restart - assumes lock on entry */
+    /* Restart */
     public void restart() {
+        human = GameRules.BLACK;
         initAI();
-        board = new int[19][19];
-        lastX = lastY = -1;
-        human = BLACK;
-        turn = BLACK;
         repaint();
     }
 
@@ -197,16 +140,17 @@ public class MainPanel extends JPanel {
                     hy = (int)(GRID_WIDTH * (j + 1 - hf)),
                     hw = (int)(GRID_WIDTH * 2 * hf);
                 // Highlight
-                if (i == lastX && j == lastY) {
+                if (i * 19 + j == session.lastMove()) {
                     bGraph.setColor(highlight);
                     bGraph.fillOval(hx, hy, hw, hw);
                 }
                 // Stone
-                if (board[i][j] != EMPTY) {
-                    if (board[i][j] == BLACK) {
+                int stone = session.get(i, j);
+                if (stone != GameRules.EMPTY) {
+                    if (stone == GameRules.BLACK) {
                         bGraph.setColor(Color.BLACK);
                         bGraph.fillOval(x, y, w, w);
-                    } else if (board[i][j] == WHITE) {
+                    } else if (stone == GameRules.WHITE) {
                         bGraph.setColor(Color.WHITE);
                         bGraph.fillOval(x, y, w, w);
                     }
@@ -228,7 +172,7 @@ public class MainPanel extends JPanel {
         }
 
         // Draw prompt
-        if (turn == human)
+        if (session.turn() == human)
             bGraph.drawString(BLACK_MSG, GRID_WIDTH * 17, GRID_WIDTH * 39 / 2);
         else
             bGraph.drawString(WHITE_MSG, GRID_WIDTH * 15, GRID_WIDTH * 39 / 2);
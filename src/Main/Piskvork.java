@@ -0,0 +1,310 @@
+/*
+ * Piskvork: The engine without a window, speaking the Piskvork protocol on
+ * standard input and output, as tournament managers (Piskvork, Gomocup)
+ * expect of a brain. Each game is a GameSession between ABEvalAI and the
+ * manager - the same AI game after game, so that its transposition table
+ * carries over. The time for a move is a share of what is left of the
+ * match, within the turn limit; the transposition table takes what
+ * max_memory leaves once the rest of the AI and the mapped files are
+ * counted.
+ * Known openings are played from OpeningBook.FILE, if there is one, and
+ * positions solved in earlier games are kept in SolvedCache.FILE, in the
+ * folder the manager gives for persistent files (INFO folder) - or else in
+ * the working directory.
+ * Only standard output carries the protocol - the AI's diagnostics go to
+ * standard error.
+ * Usage: java Main.Piskvork
+ */
+
+package Main;
+
+import AI.ABEvalAI;
+import AI.OpeningBook;
+import AI.SolvedCache;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+
+/**
+ *
+ * @author samuel
+ */
+public class Piskvork {
+
+    private static final String ABOUT = "name=\"Five\", version=\"1.0\", author=\"samuel\"";
+
+    // Time management (ms)
+    private static final long TURN_TIME = 30000;                                // Until told otherwise
+    private static final long MIN_TIME = 5;
+    private static final long MARGIN = 60;                                      // Manager and JVM overhead
+    private static final int SHORT_MARGIN = 3;                                  // Or a third of a short turn
+    private static final int GAME_MOVES = 40;                                   // Own moves in a long game
+    private static final int MIN_MOVES_TO_GO = 10;
+    private static final long WARM_UP_TIME = 50;                                // Per move, over WARM_UP_MOVES
+    private static final int WARM_UP_MOVES = 30;
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    private final PrintStream out;
+    private long timeoutTurn = TURN_TIME, timeoutMatch = 0, timeLeft = Long.MAX_VALUE;
+    private long maxMemory = 0;                                                 // Bytes, 0 for no limit
+    private File folder;                                                        // Persistent files, if given
+    private long received;                                                      // Time of current command
+    private boolean warm;                                                       // Search compiled
+
+    // Current game, null until the first move, and the AI, kept from game
+    // to game while its table size stays the same
+    private GameSession session;
+    private ABEvalAI ai;
+    private int tableMegabytes;                                                 // Of ai's table, 0 for default
+
+    public Piskvork(PrintStream out) {
+        this.out = out;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Piskvork brain = new Piskvork(System.out);
+        System.setOut(System.err);
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        while ((line = in.readLine()) != null)
+            if (!brain.command(line.trim(), in))
+                break;
+    }
+
+    /* Carry out a command - returns false on END */
+    boolean command(String line, BufferedReader in) throws IOException {
+
+        received = System.currentTimeMillis();
+        if (line.isEmpty())
+            return true;
+        int space = line.indexOf(' ');
+        String command = (space < 0 ? line : line.substring(0, space)).toUpperCase(),
+               args = space < 0 ? "" : line.substring(space + 1).trim();
+
+        if (command.equals("START")) {
+            if (args.equals("19")) {
+                clear();
+                warmUp();                                                       // Not on the clock yet
+                prepare();
+                out.println("OK");
+            } else
+                out.println("ERROR only 19x19 boards are supported");
+        } else if (command.equals("RECTSTART")) {
+            out.println("ERROR only 19x19 boards are supported");
+        } else if (command.equals("RESTART")) {
+            clear();
+            out.println("OK");
+        } else if (command.equals("INFO")) {
+            info(args);
+        } else if (command.equals("BEGIN")) {
+            newGame(GameRules.BLACK);
+            reply();
+        } else if (command.equals("TURN")) {
+            int p = point(args);
+            if (session == null)
+                newGame(GameRules.WHITE);
+            if (p < 0 || !session.isLegal(p / 19, p % 19))
+                out.println("ERROR illegal move " + args);
+            else {
+                session.play(p / 19, p % 19);
+                reply();
+            }
+        } else if (command.equals("BOARD")) {
+            board(in);
+        } else if (command.equals("TAKEBACK")) {
+            takeBack(args);
+        } else if (command.equals("ABOUT")) {
+            out.println(ABOUT);
+        } else if (command.equals("END")) {
+            if (session != null)
+                session.end();
+            return false;
+        } else
+            out.println("UNKNOWN " + command);
+        out.flush();
+        return true;
+
+    }
+
+    /* Take a setting; unknown ones are ignored, as the protocol asks */
+    private void info(String args) {
+        int space = args.indexOf(' ');
+        if (space < 0)
+            return;
+        String key = args.substring(0, space).toLowerCase(), text = args.substring(space + 1).trim();
+        if (key.equals("folder")) {
+            folder = text.isEmpty() ? null : new File(text);
+            return;
+        }
+        long value;
+        try {
+            value = Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (key.equals("timeout_turn"))
+            timeoutTurn = value;
+        else if (key.equals("timeout_match"))
+            timeoutMatch = value;
+        else if (key.equals("time_left"))
+            timeLeft = value;
+        else if (key.equals("max_memory"))
+            maxMemory = value;
+    }
+
+    /* Start a game with the AI playing the given side */
+    private void newGame(int player) {
+        clear();
+        prepare();
+        session = player == GameRules.BLACK ? new GameSession(ai, null) : new GameSession(null, ai);
+    }
+
+    /* Have the AI ready for the settings given so far. The book and the
+     * solved cache are mapped, outside the heap but within the process's
+     * memory. A new AI is only needed for a new table size: otherwise the
+     * last one plays on, with its table
+     */
+    private void prepare() {
+        OpeningBook book = OpeningBook.standard();
+        SolvedCache solved = SolvedCache.standard(folder);
+        long mapped = (book == null ? 0 : book.bytes()) + (solved == null ? 0 : solved.bytes());
+        int mb = maxMemory > 0 ? ABEvalAI.tableMegabytes(maxMemory - mapped, THREADS) : 0;
+        if (ai == null || mb != tableMegabytes) {
+            if (ai != null)
+                ai.end();
+            ai = null;                                                          // Old table can go
+            ai = mb > 0 ? new ABEvalAI(mb) : new ABEvalAI();
+            tableMegabytes = mb;
+            ai.setThreads(THREADS);
+            ai.setPonder(false);
+        }
+        ai.setBook(book);
+        ai.setSolved(solved);
+    }
+
+    /* Once, before the first move on the clock: have two small AIs play a
+     * few quick moves, so that the search is compiled by then
+     */
+    private void warmUp() {
+        if (warm)
+            return;
+        warm = true;
+        ABEvalAI black = new ABEvalAI(1), white = new ABEvalAI(1);
+        for (ABEvalAI small : new ABEvalAI[] {black, white}) {
+            small.setThreads(1);
+            small.setPonder(false);
+            small.setBudget(WARM_UP_TIME, Long.MAX_VALUE);
+        }
+        GameSession game = new GameSession(black, white);
+        while (!game.isOver() && game.moves() < WARM_UP_MOVES)
+            game.step();
+        game.end();
+    }
+
+    /* Drop the current game, if any, taking its stones back off the AI's
+     * board so that the AI can play the next one
+     */
+    private void clear() {
+        if (session != null)
+            for (int i = session.moves(); i > 0; i--)
+                session.takeBack();
+        session = null;
+    }
+
+    /* BOARD: a whole position, one "x,y,field" line per stone in the order
+     * played (field 1 for the AI's stones, 2 for the opponent's), up to DONE
+     */
+    private void board(BufferedReader in) throws IOException {
+        int n = 0, mine = 0;
+        int[] stones = new int[19 * 19], fields = new int[19 * 19];
+        boolean valid = true;
+        String line;
+        while ((line = in.readLine()) != null && !(line = line.trim()).equalsIgnoreCase("DONE")) {
+            String[] parts = line.split(",");
+            int p = parts.length == 3 ? point(parts[0] + "," + parts[1]) : -1;
+            int field = parts.length == 3 ? parseInt(parts[2]) : 0;
+            if (p < 0 || n == stones.length)
+                valid = false;
+            else if (field == 1 || field == 2) {
+                stones[n] = p;
+                fields[n++] = field;
+                if (field == 1)
+                    mine++;
+            }
+        }
+        received = System.currentTimeMillis();                                  // The clock starts now
+
+        // The AI is to move, so it is black if it has as many stones as the
+        // opponent
+        int player = mine == n - mine ? GameRules.BLACK : GameRules.WHITE;
+        newGame(player);
+        for (int i = 0; i < n && valid; i++) {
+            int p = stones[i], side = fields[i] == 1 ? player : -player;
+            if (!session.isLegal(p / 19, p % 19))
+                valid = false;
+            else
+                session.setUp(p / 19, p % 19, side);
+        }
+        if (valid)
+            reply();
+        else
+            out.println("ERROR invalid position");
+    }
+
+    /* TAKEBACK: undo the last move, on the AI's board too, so that it keeps
+     * its tables
+     */
+    private void takeBack(String args) {
+        int p = point(args);
+        if (session == null || p < 0 || session.lastMove() != p) {
+            out.println("ERROR cannot take back " + args);
+            return;
+        }
+        session.takeBack();
+        out.println("OK");
+    }
+
+    /* Have the AI move, on the clock, and send the move */
+    private void reply() {
+        if (session.isOver()) {
+            out.println("ERROR game over");
+            return;
+        }
+        ai.setBudget(Math.max(MIN_TIME, moveTime() - (System.currentTimeMillis() - received)), Long.MAX_VALUE);
+        int p = session.step();
+        out.println(p / 19 + "," + p % 19);
+    }
+
+    /* Time for the next move: a share of the match time left, spread over the
+     * moves the game may still take, within the turn limit (0 meaning as
+     * fast as possible), less a margin - a share of the time itself where
+     * the full one would leave too little
+     */
+    private long moveTime() {
+        long time = timeoutTurn;
+        if (timeoutMatch > 0)
+            time = Math.min(time, timeLeft / Math.max(MIN_MOVES_TO_GO, GAME_MOVES - session.moves() / 2));
+        return Math.max(MIN_TIME, time - Math.min(MARGIN, time / SHORT_MARGIN));
+    }
+
+    /* A point from "x,y", packed, or -1 */
+    private static int point(String s) {
+        String[] parts = s.split(",");
+        if (parts.length != 2)
+            return -1;
+        int x = parseInt(parts[0]), y = parseInt(parts[1]);
+        return GameRules.inBoard(x, y) ? x * 19 + y : -1;
+    }
+
+    private static int parseInt(String s) {
+        try {
+            return Integer.parseInt(s.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+}
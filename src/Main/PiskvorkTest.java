@@ -0,0 +1,71 @@
+/*
+ * PiskvorkTest: Two brains playing each other through the protocol, in one
+ * process, at short turn limits - every reply must arrive within the limit.
+ * Usage: java Main.PiskvorkTest [games per limit]
+ */
+
+package Main;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ *
+ * @author samuel
+ */
+public class PiskvorkTest {
+
+    private static final long[] LIMITS = {30, 50, 100};                         // timeout_turn, ms
+    private static final int MAX_MOVES = 19 * 19;
+
+    public static void main(String[] args) throws IOException {
+
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));            // The AIs' diagnostics
+
+        ByteArrayOutputStream[] outs = {new ByteArrayOutputStream(), new ByteArrayOutputStream()};
+        Piskvork[] brains = {new Piskvork(new PrintStream(outs[0], true)), new Piskvork(new PrintStream(outs[1], true))};
+
+        for (long limit : LIMITS) {
+            long worst = 0;
+            int replies = 0, late = 0;
+            for (int g = 0; g < games; g++) {
+                for (Piskvork brain : brains) {
+                    brain.command("START 19", null);
+                    brain.command("INFO timeout_turn " + limit, null);
+                }
+
+                // Black is the brain told to begin, and the two take turns
+                // until a reply is not a move, i.e. the game is over
+                String reply = null;
+                for (int i = 0; i < MAX_MOVES && (i == 0 || reply.matches("\\d+,\\d+")); i++) {
+                    long st = System.currentTimeMillis();
+                    reply = reply(brains[i % 2], outs[i % 2], i == 0 ? "BEGIN" : "TURN " + reply);
+                    long time = System.currentTimeMillis() - st;
+                    worst = Math.max(worst, time);
+                    replies++;
+                    if (time > limit)
+                        late++;
+                }
+            }
+            console.println("Limit " + limit + " ms: " + replies + " replies, slowest " + worst + " ms, "
+                            + late + " late - " + (late == 0));
+        }
+
+        for (Piskvork brain : brains)
+            brain.command("END", null);
+        System.setOut(console);
+
+    }
+
+    /* Send a command, and return the last line the brain answered */
+    private static String reply(Piskvork brain, ByteArrayOutputStream out, String command) throws IOException {
+        out.reset();
+        brain.command(command, null);
+        String[] lines = out.toString().trim().split("\n");
+        return lines[lines.length - 1].trim();
+    }
+
+}